@@ -0,0 +1,66 @@
+package de.unistuttgart.fmi;
+
+import de.unistuttgart.fmi.graph.Graph;
+import de.unistuttgart.fmi.graph.InvalidGraphException;
+import de.unistuttgart.fmi.graph.SyntheticGraph;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing a path of the given number of nodes to the GeoJSON response of /path, plain and
+ * compressed with gzip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    public int length;
+
+    private Graph graph;
+    private int[] path;
+    private final GeoJsonWriter writer = new GeoJsonWriter();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() throws IOException, InvalidGraphException {
+        graph = Graph.from(new SyntheticGraph(100, 100, 42).write().toString());
+        path = new int[length];
+        for (int i = 0; i < length; i++) {
+            path[i] = i % graph.getNumNodes();
+        }
+    }
+
+    @Benchmark
+    public int geoJson() throws IOException {
+        output.reset();
+        writer.writePath(graph, path, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public int geoJsonGzip() throws IOException {
+        output.reset();
+        try (var gzip = new GZIPOutputStream(output, 8192)) {
+            writer.writePath(graph, path, gzip);
+        }
+        return output.size();
+    }
+}
@@ -0,0 +1,61 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Snapping random coordinates within the graph area to the closest node, to the closest ten
+ * candidates and to the closest four edges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearestNeighbourBenchmark {
+
+    @Param({"200", "1000"})
+    public int size;
+
+    private Graph graph;
+    private double[][] coordinates;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException, InvalidGraphException {
+        var synthetic = new SyntheticGraph(size, size, 42);
+        graph = Graph.parse(synthetic.write().toString());
+        coordinates = synthetic.coordinates(4096, 7);
+        graph.buildEdgeIndex();
+    }
+
+    @Benchmark
+    public double[] nearestNeighbour() {
+        next = (next + 1) & (coordinates.length - 1);
+        return graph.getNearestNeighbour(coordinates[next]);
+    }
+
+    @Benchmark
+    public int[] nearestNeighbours() {
+        next = (next + 1) & (coordinates.length - 1);
+        return graph.getNearestNeighbours(coordinates[next][0], coordinates[next][1], 10);
+    }
+
+    @Benchmark
+    public Snap[] nearestEdges() {
+        next = (next + 1) & (coordinates.length - 1);
+        return graph.snap(coordinates[next][0], coordinates[next][1], 4);
+    }
+}
@@ -0,0 +1,47 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a .fmi file including the KD-tree construction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"200", "1000"})
+    public int size;
+
+    private String filePath;
+
+    @Setup
+    public void setup() throws IOException {
+        filePath = new SyntheticGraph(size, size, 42).write().toString();
+    }
+
+    @Benchmark
+    public Graph sequential() throws InvalidGraphException {
+        return new GraphParser(filePath).parse();
+    }
+
+    @Benchmark
+    public Graph parallel() throws InvalidGraphException {
+        return new ParallelGraphParser(filePath).parse();
+    }
+}
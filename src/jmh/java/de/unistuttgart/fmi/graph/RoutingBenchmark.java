@@ -0,0 +1,89 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One-to-one and one-to-all Dijkstra on a pooled {@link ClosestPathFinder} and one-to-one
+ * bidirectional Dijkstra. One-to-one Dijkstra also runs on the weights of {@link Profile#TIME},
+ * which should be as fast as on the weights of the file.
+ *
+ * The locality parameter selects random query pairs ("random") or pairs at most 20 grid steps
+ * apart ("local"), the queue parameter the priority queue of the Dijkstra finder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"200", "1000"})
+    public int size;
+
+    @Param({"local", "random"})
+    public String locality;
+
+    @Param({"BINARY", "QUATERNARY", "RADIX"})
+    public QueueType queue;
+
+    private Graph graph;
+    private int[][] queries;
+    private int next;
+    private ClosestPathFinder finder;
+    private BidirectionalPathFinder bidirectionalFinder;
+
+    @Setup
+    public void setup() throws IOException, InvalidGraphException {
+        var synthetic = new SyntheticGraph(size, size, 42);
+        graph = Graph.parse(synthetic.write().toString());
+        queries = synthetic.queries(1024, locality.equals("local") ? 20 : 0, 7);
+        graph.computeProfile(Profile.TIME);
+        finder = graph.getClosestPathFinder(queue);
+        bidirectionalFinder = graph.getBidirectionalPathFinder();
+    }
+
+    @TearDown
+    public void tearDown() {
+        finder.close();
+        bidirectionalFinder.close();
+    }
+
+    @Benchmark
+    public int oneToOne() {
+        next = (next + 1) & (queries.length - 1);
+        return finder.getShortestPath(queries[next][0], queries[next][1]);
+    }
+
+    @Benchmark
+    public int oneToOneProfile() {
+        next = (next + 1) & (queries.length - 1);
+        return finder.getShortestPath(queries[next][0], queries[next][1], Profile.TIME);
+    }
+
+    @Benchmark
+    public int oneToOneBidirectional() {
+        next = (next + 1) & (queries.length - 1);
+        return bidirectionalFinder.getShortestPath(queries[next][0], queries[next][1]);
+    }
+
+    @Benchmark
+    public int oneToAll() {
+        next = (next + 1) & (queries.length - 1);
+        finder.getShortestPath(queries[next][0]);
+        return finder.getDistance(queries[next][1]);
+    }
+}
@@ -0,0 +1,180 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic road-like test graph in .fmi format, so the benchmarks run without the germany
+ * graph.
+ *
+ * Nodes form a jittered width x height grid south of Stuttgart with shuffled ids. Some streets
+ * are missing or one-way, every tenth row and column is a fast road with lower weights.
+ */
+public class SyntheticGraph {
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    // node id of every grid position and the other way round
+    private final int[] ids;
+    private final int[] positions;
+
+    public SyntheticGraph(int width, int height, long seed) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.ids = new int[width * height];
+        this.positions = new int[width * height];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        var random = new Random(seed);
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = temp;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            positions[ids[i]] = i;
+        }
+    }
+
+    /**
+     * Writes the graph to a file in the temp directory, or reuses it if it was written before.
+     */
+    public Path write() throws IOException {
+        Path file = Path.of(
+                System.getProperty("java.io.tmpdir"),
+                String.format("routeplanner-synthetic-%dx%d-%d.fmi", width, height, seed));
+        if (Files.exists(file)) {
+            return file;
+        }
+
+        Path temp = Files.createTempFile(file.getParent(), "routeplanner-synthetic", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            writer.write("# Id : synthetic\n# Timestamp : 0\n# Type: maxspeed\n# Revision: 1\n\n");
+            writer.write(ids.length + "\n" + countEdges() + "\n");
+            for (int id = 0; id < ids.length; id++) {
+                int x = positions[id] % width;
+                int y = positions[id] / width;
+                double lat = 48.5 + 0.001 * y + 0.0004 * unit(hash(x, y, 4));
+                double lon = 9.0 + 0.0015 * x + 0.0004 * unit(hash(x, y, 5));
+                writer.write(String.format(Locale.US, "%d %d %.7f %.7f 0\n", id, id, lat, lon));
+            }
+            for (int id = 0; id < ids.length; id++) {
+                int x = positions[id] % width;
+                int y = positions[id] / width;
+                for (int direction = 0; direction < 4; direction++) {
+                    if (hasEdge(x, y, direction)) {
+                        int nx = x + DX[direction];
+                        int ny = y + DY[direction];
+                        writer.write(id + " " + node(nx, ny) + " " + weight(x, y, nx, ny) + " 1 50\n");
+                    }
+                }
+            }
+        }
+        Files.move(temp, file);
+        return file;
+    }
+
+    public int getNumNodes() {
+        return ids.length;
+    }
+
+    public int node(int x, int y) {
+        return ids[y * width + x];
+    }
+
+    /**
+     * @param radius maximal distance in grid steps between start and target, 0 for random pairs
+     * @return count pairs of (start, target) node ids
+     */
+    public int[][] queries(int count, int radius, long querySeed) {
+        var random = new Random(querySeed);
+        int[][] queries = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int tx;
+            int ty;
+            if (radius == 0) {
+                tx = random.nextInt(width);
+                ty = random.nextInt(height);
+            } else {
+                tx = Math.clamp(x + random.nextInt(2 * radius + 1) - radius, 0, width - 1);
+                ty = Math.clamp(y + random.nextInt(2 * radius + 1) - radius, 0, height - 1);
+            }
+            queries[i] = new int[] {node(x, y), node(tx, ty)};
+        }
+        return queries;
+    }
+
+    /**
+     * @return random (latitude, longitude) pairs within the area of the graph
+     */
+    public double[][] coordinates(int count, long coordinateSeed) {
+        var random = new Random(coordinateSeed);
+        double[][] coordinates = new double[count][];
+        for (int i = 0; i < count; i++) {
+            coordinates[i] = new double[] {
+                48.5 + 0.001 * height * random.nextDouble(), 9.0 + 0.0015 * width * random.nextDouble()
+            };
+        }
+        return coordinates;
+    }
+
+    private long countEdges() {
+        long edges = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int direction = 0; direction < 4; direction++) {
+                    if (hasEdge(x, y, direction)) {
+                        edges++;
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private boolean hasEdge(int x, int y, int direction) {
+        int nx = x + DX[direction];
+        int ny = y + DY[direction];
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+            return false;
+        }
+        // the street between both positions is identified by its lower position
+        int street = hash(Math.min(x, nx), Math.min(y, ny), nx != x ? 0 : 1);
+        if ((street & 0xff) < 26) {
+            return false;
+        }
+        // one-way streets only lead in positive direction
+        boolean oneWay = ((street >>> 8) & 0xff) < 13;
+        return !oneWay || nx > x || ny > y;
+    }
+
+    private int weight(int x, int y, int nx, int ny) {
+        boolean fast = (x == nx && x % 10 == 0) || (y == ny && y % 10 == 0);
+        int length = 80 + (hash(Math.min(x, nx), Math.min(y, ny), 2) & 63);
+        return fast ? length / 3 : length;
+    }
+
+    private int hash(int x, int y, int salt) {
+        long h = seed * 0x9E3779B97F4A7C15L + x * 0xBF58476D1CE4E5B9L + y * 0x94D049BB133111EBL + salt;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return (int) (h ^ (h >>> 31));
+    }
+
+    private static double unit(int hash) {
+        return (hash & 0xffff) / 65536.0;
+    }
+}
@@ -1,27 +1,109 @@
 package de.unistuttgart.fmi;
 
+import de.unistuttgart.fmi.graph.Components;
 import de.unistuttgart.fmi.graph.Graph;
 import de.unistuttgart.fmi.graph.InvalidGraphException;
+import de.unistuttgart.fmi.graph.Profile;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class App {
     public static void main(String[] args) throws InvalidGraphException {
         String graphPath = args[1];
 
+        Graph graph = load(graphPath, args);
+
+        Server server = new Server(graph, ServerConfig.fromArgs(args), graphPath, path -> load(path, args));
+
+        System.out.println("[Q] to quit:");
+        try (var in = new Scanner(System.in)) {
+            in.next();
+        }
+        server.stop();
+
+        System.exit(0);
+    }
+
+    /**
+     * Reads the graph at graphPath and preprocesses it as selected by the command line arguments.
+     *
+     * @throws IllegalArgumentException if -compact is combined with -profiles, -ch or -landmarks,
+     *     which a compact graph does not support
+     */
+    static Graph load(String graphPath, String[] args) throws InvalidGraphException {
+        if (Arrays.asList(args).contains("-compact")) {
+            for (String option : new String[] {"-profiles", "-ch", "-landmarks"}) {
+                if (Arrays.asList(args).contains(option)) {
+                    throw new IllegalArgumentException(
+                            "-compact cannot be combined with " + option + ", a compact graph only supports Dijkstra");
+                }
+            }
+        }
+
         long graphReadStart = System.currentTimeMillis();
 
-        Graph graph = Graph.from(graphPath);
+        Graph graph = Graph.from(graphPath, System.out::println);
 
         long graphReadEnd = System.currentTimeMillis();
         System.out.println("\tgraph read took " + (graphReadEnd - graphReadStart) + "ms");
 
-        Server server = new Server(graph);
+        if (Arrays.asList(args).contains("-compact")) {
+            long compactStart = System.currentTimeMillis();
 
-        System.out.println("[Q] to quit:");
-        try (var in = new Scanner(System.in)) {
-            in.next();
+            Graph compact = graph.compact();
+
+            long compactEnd = System.currentTimeMillis();
+            System.out.println("\tcompaction took " + (compactEnd - compactStart) + "ms, "
+                    + Benchmark.describeCompaction(graph, compact));
+            graph = compact;
         }
 
-        System.exit(0);
+        long componentsStart = System.currentTimeMillis();
+
+        Components components = graph.computeComponents();
+
+        long componentsEnd = System.currentTimeMillis();
+        System.out.println("\tcomponents took " + (componentsEnd - componentsStart) + "ms, " + components.getCount()
+                + " components, largest " + components.getLargestSize() + " nodes");
+
+        int profilesIndex = Arrays.asList(args).indexOf("-profiles");
+        if (profilesIndex != -1) {
+            for (String name : args[profilesIndex + 1].split(",")) {
+                long profileStart = System.currentTimeMillis();
+
+                graph.computeProfile(Profile.of(name));
+
+                long profileEnd = System.currentTimeMillis();
+                System.out.println("\t" + name + " profile took " + (profileEnd - profileStart) + "ms");
+            }
+        }
+
+        if (Arrays.asList(args).contains("-ch")) {
+            long contractStart = System.currentTimeMillis();
+
+            graph.contract();
+
+            long contractEnd = System.currentTimeMillis();
+            System.out.println("\tcontraction took " + (contractEnd - contractStart) + "ms");
+        }
+
+        long edgeIndexStart = System.currentTimeMillis();
+
+        long edgeIndexBytes = graph.buildEdgeIndex();
+
+        long edgeIndexEnd = System.currentTimeMillis();
+        System.out.println(
+                "\tedge index took " + (edgeIndexEnd - edgeIndexStart) + "ms, " + edgeIndexBytes / (1 << 20) + "MB");
+
+        int landmarksIndex = Arrays.asList(args).indexOf("-landmarks");
+        if (landmarksIndex != -1) {
+            long landmarksStart = System.currentTimeMillis();
+
+            graph.computeLandmarks(Integer.parseInt(args[landmarksIndex + 1]));
+
+            long landmarksEnd = System.currentTimeMillis();
+            System.out.println("\tlandmark selection took " + (landmarksEnd - landmarksStart) + "ms");
+        }
+        return graph;
     }
 }
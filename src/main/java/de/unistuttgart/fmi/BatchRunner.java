@@ -0,0 +1,175 @@
+package de.unistuttgart.fmi;
+
+import de.unistuttgart.fmi.graph.Components;
+import de.unistuttgart.fmi.graph.Graph;
+import de.unistuttgart.fmi.graph.InvalidGraphException;
+import de.unistuttgart.fmi.metrics.Histogram;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Answers all queries of a .que file on several threads and writes the distances in input order,
+ * one per line, to an output file.
+ *
+ * The file is read in chunks of {@value #CHUNK_SIZE} queries. Every chunk is routed by one worker
+ * with a single pooled finder, and only a few chunks per worker are in flight, so files of any
+ * size are streamed. Latencies are counted in a {@link Histogram} of fixed size, whose
+ * percentiles are at most 12.5% above the exact ones.
+ */
+public class BatchRunner {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    public static void main(String[] args) throws InvalidGraphException, IOException, InterruptedException {
+        // read parameters (parameters are expected in exactly this order)
+        String graphPath = args[1];
+        String quePath = args[3];
+        String outPath = args[5];
+        int threadsIndex = Arrays.asList(args).indexOf("-threads");
+        int threads = threadsIndex != -1
+                ? Integer.parseInt(args[threadsIndex + 1])
+                : Runtime.getRuntime().availableProcessors();
+        int landmarksIndex = Arrays.asList(args).indexOf("-landmarks");
+
+        System.out.println("Reading graph file and creating graph data structure (" + graphPath + ")");
+        long graphReadStart = System.currentTimeMillis();
+
+        Graph graph = Graph.from(graphPath, System.out::println);
+        graph.setConcurrency(threads);
+
+        long graphReadEnd = System.currentTimeMillis();
+        System.out.println("\tgraph read took " + (graphReadEnd - graphReadStart) + "ms");
+
+        long componentsStart = System.currentTimeMillis();
+
+        Components components = graph.computeComponents();
+
+        long componentsEnd = System.currentTimeMillis();
+        System.out.println("\tcomponents took " + (componentsEnd - componentsStart) + "ms, " + components.getCount()
+                + " components, largest " + components.getLargestSize() + " nodes");
+
+        if (Arrays.asList(args).contains("-ch")) {
+            long contractStart = System.currentTimeMillis();
+
+            graph.contract();
+
+            long contractEnd = System.currentTimeMillis();
+            System.out.println("\tcontraction took " + (contractEnd - contractStart) + "ms");
+        }
+
+        if (landmarksIndex != -1) {
+            long landmarksStart = System.currentTimeMillis();
+
+            graph.computeLandmarks(Integer.parseInt(args[landmarksIndex + 1]));
+
+            long landmarksEnd = System.currentTimeMillis();
+            System.out.println("\tlandmark selection took " + (landmarksEnd - landmarksStart) + "ms");
+        }
+
+        System.out.println("Running queries in .que file " + quePath + " on " + threads + " threads");
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        var pending = new ArrayDeque<Future<Chunk>>();
+        // nanoseconds from 128ns to 34s
+        var latencies = new Histogram(7, 35, 1);
+        int numQueries = 0;
+        long settled = 0;
+        long start = System.nanoTime();
+        try (var reader = new LineNumberReader(new FileReader(quePath));
+                var writer = new BufferedWriter(new FileWriter(outPath), 1 << 16)) {
+            while (true) {
+                int[] queries = readChunk(reader, quePath);
+                if (queries.length > 0) {
+                    pending.add(workers.submit(() -> route(graph, queries, latencies)));
+                }
+
+                // write finished chunks in input order, waiting once enough are in flight
+                while (!pending.isEmpty()
+                        && (pending.peek().isDone() || pending.size() > 2 * threads || queries.length == 0)) {
+                    Chunk chunk = pending.poll().get();
+                    for (int distance : chunk.distances) {
+                        writer.write(Integer.toString(distance));
+                        writer.newLine();
+                    }
+                    numQueries += chunk.distances.length;
+                    settled += chunk.settled;
+                }
+                if (queries.length == 0) {
+                    break;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+        long end = System.nanoTime();
+
+        System.out.println("\t" + numQueries + " queries took " + (end - start) / 1_000_000 + "ms, "
+                + (long) (numQueries / ((end - start) / 1e9)) + " queries/s");
+        System.out.println("\tlatency p50 " + (long) latencies.getValueAtQuantile(0.5) / 1_000 + "us, p99 "
+                + (long) latencies.getValueAtQuantile(0.99) / 1_000 + "us, "
+                + settled / Math.max(1, numQueries) + " nodes settled per query");
+        System.out.println("\tdistances written to " + outPath);
+    }
+
+    /**
+     * @return up to {@value #CHUNK_SIZE} queries as (start, target) pairs, empty at the end of the
+     *     file
+     * @throws IOException also if a line is not two node ids separated by whitespace
+     */
+    private static int[] readChunk(LineNumberReader reader, String quePath) throws IOException {
+        int[] queries = new int[2 * CHUNK_SIZE];
+        int count = 0;
+        String line;
+        while (count < queries.length && (line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] tokens = line.strip().split("\\s+");
+            if (tokens.length != 2) {
+                throw invalidQuery(reader, quePath, line, null);
+            }
+            try {
+                queries[count] = Integer.parseInt(tokens[0]);
+                queries[count + 1] = Integer.parseInt(tokens[1]);
+            } catch (NumberFormatException e) {
+                throw invalidQuery(reader, quePath, line, e);
+            }
+            count += 2;
+        }
+        return count == queries.length ? queries : Arrays.copyOf(queries, count);
+    }
+
+    private static IOException invalidQuery(LineNumberReader reader, String quePath, String line, Throwable cause) {
+        return new IOException(
+                "Expected a start and a target node id in line " + reader.getLineNumber() + " of " + quePath
+                        + ", got \"" + line + "\"",
+                cause);
+    }
+
+    private static Chunk route(Graph graph, int[] queries, Histogram latencies) {
+        int numQueries = queries.length / 2;
+        int[] distances = new int[numQueries];
+        long settled = 0;
+        try (var finder = graph.getPathFinder()) {
+            for (int i = 0; i < numQueries; i++) {
+                long start = System.nanoTime();
+                distances[i] = finder.getShortestPath(queries[2 * i], queries[2 * i + 1]);
+                latencies.record(System.nanoTime() - start);
+                settled += finder.getSettledNodes();
+            }
+        }
+        return new Chunk(distances, settled);
+    }
+
+    private record Chunk(int[] distances, long settled) {}
+}
@@ -2,8 +2,13 @@ package de.unistuttgart.fmi;
 
 import de.unistuttgart.fmi.graph.Graph;
 import de.unistuttgart.fmi.graph.InvalidGraphException;
+import de.unistuttgart.fmi.graph.QueueType;
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 public class Benchmark {
@@ -15,16 +20,25 @@ public class Benchmark {
         double lon = Double.parseDouble(args[5]);
         String quePath = args[7];
         int sourceNodeId = Integer.parseInt(args[9]);
+        boolean contract = Arrays.asList(args).contains("-ch");
+        int landmarksIndex = Arrays.asList(args).indexOf("-landmarks");
+        boolean compareQueues = Arrays.asList(args).contains("-queues");
+        boolean compact = Arrays.asList(args).contains("-compact");
 
         // run benchmarks
         System.out.println("Reading graph file and creating graph data structure (" + graphPath + ")");
         long graphReadStart = System.currentTimeMillis();
 
-        Graph graph = Graph.from(graphPath);
+        Graph graph = Graph.from(graphPath, System.out::println);
 
         long graphReadEnd = System.currentTimeMillis();
         System.out.println("\tgraph read took " + (graphReadEnd - graphReadStart) + "ms");
 
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        System.out.println(
+                "\theap in use after reading: " + (runtime.totalMemory() - runtime.freeMemory()) / (1 << 20) + "MB");
+
         System.out.println("Finding closest node to coordinates " + lat + " " + lon);
         long nodeFindStart = System.currentTimeMillis();
 
@@ -35,24 +49,156 @@ public class Benchmark {
                 + coords[1] + " id: " + (int) coords[2]);
 
         System.out.println("Running one-to-one Dijkstras for queries in .que file " + quePath);
+        List<int[]> queries = new ArrayList<>();
         long queStart = System.currentTimeMillis();
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(quePath))) {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(quePath));
+                var finder = graph.getClosestPathFinder()) {
             String currLine;
             while ((currLine = bufferedReader.readLine()) != null) {
                 int oneToOneSourceNodeId = Integer.parseInt(currLine.substring(0, currLine.indexOf(" ")));
                 int oneToOneTargetNodeId = Integer.parseInt(currLine.substring(currLine.indexOf(" ") + 1));
 
-                int oneToOneDistance =
-                        graph.getClosestPathFinder().getShortestPath(oneToOneSourceNodeId, oneToOneTargetNodeId);
+                int oneToOneDistance = finder.getShortestPath(oneToOneSourceNodeId, oneToOneTargetNodeId);
 
                 System.out.println(oneToOneDistance);
+                queries.add(new int[] {
+                    oneToOneSourceNodeId, oneToOneTargetNodeId, oneToOneDistance, finder.getSettledNodes()
+                });
             }
         } catch (Exception e) {
             System.out.println("Exception...");
             e.printStackTrace();
         }
         long queEnd = System.currentTimeMillis();
-        System.out.println("\tprocessing .que file took " + (queEnd - queStart) + "ms");
+        System.out.println("\tprocessing .que file took " + (queEnd - queStart) + "ms ("
+                + (queEnd - queStart) / Math.max(1, queries.size()) + "ms per query)");
+
+        System.out.println("Running bidirectional Dijkstras for queries in .que file " + quePath);
+        int bidirectionalMismatches = 0;
+        long dijkstraSettled = 0;
+        long bidirectionalSettled = 0;
+        long bidirectionalStart = System.nanoTime();
+        try (var bidirectionalFinder = graph.getBidirectionalPathFinder()) {
+            for (int[] query : queries) {
+                if (bidirectionalFinder.getShortestPath(query[0], query[1]) != query[2]) {
+                    bidirectionalMismatches++;
+                }
+                dijkstraSettled += query[3];
+                bidirectionalSettled += bidirectionalFinder.getSettledNodes();
+            }
+        }
+        long bidirectionalEnd = System.nanoTime();
+        System.out.println("\tprocessing .que file took " + (bidirectionalEnd - bidirectionalStart) / 1_000_000 + "ms ("
+                + (bidirectionalEnd - bidirectionalStart) / 1_000 / Math.max(1, queries.size()) + "us per query), "
+                + bidirectionalMismatches + " distances differ from Dijkstra");
+        System.out.println("\tsettled " + bidirectionalSettled / Math.max(1, queries.size())
+                + " nodes per query, Dijkstra " + dijkstraSettled / Math.max(1, queries.size()));
+
+        if (compareQueues) {
+            for (QueueType queueType : QueueType.values()) {
+                System.out.println("Running one-to-one Dijkstras with " + queueType + " queue for queries in .que file "
+                        + quePath);
+                int mismatches = 0;
+                long settled = 0;
+                long queueStart = System.nanoTime();
+                try (var queueFinder = graph.getClosestPathFinder(queueType)) {
+                    for (int[] query : queries) {
+                        if (queueFinder.getShortestPath(query[0], query[1]) != query[2]) {
+                            mismatches++;
+                        }
+                        settled += queueFinder.getSettledNodes();
+                    }
+                }
+                long queueEnd = System.nanoTime();
+                System.out.println("\tprocessing .que file took " + (queueEnd - queueStart) / 1_000_000 + "ms ("
+                        + (queueEnd - queueStart) / 1_000 / Math.max(1, queries.size()) + "us per query, "
+                        + settled / Math.max(1, queries.size()) + " nodes settled per query), " + mismatches
+                        + " distances differ from Dijkstra");
+            }
+        }
+
+        if (compact) {
+            System.out.println("Compacting graph");
+            long compactStart = System.currentTimeMillis();
+
+            Graph compactGraph = graph.compact();
+
+            long compactEnd = System.currentTimeMillis();
+            System.out.println("\tcompaction took " + (compactEnd - compactStart) + "ms, "
+                    + describeCompaction(graph, compactGraph));
+
+            System.out.println("Running one-to-one Dijkstras on the compact graph for queries in .que file " + quePath);
+            int mismatches = 0;
+            long compactQueStart = System.nanoTime();
+            try (var compactFinder = compactGraph.getClosestPathFinder()) {
+                for (int[] query : queries) {
+                    if (compactFinder.getShortestPath(query[0], query[1]) != query[2]) {
+                        mismatches++;
+                    }
+                }
+            }
+            long compactQueEnd = System.nanoTime();
+            System.out.println("\tprocessing .que file took " + (compactQueEnd - compactQueStart) / 1_000_000 + "ms ("
+                    + (compactQueEnd - compactQueStart) / 1_000 / Math.max(1, queries.size()) + "us per query), "
+                    + mismatches + " distances differ from Dijkstra");
+        }
+
+        if (landmarksIndex != -1) {
+            int count = Integer.parseInt(args[landmarksIndex + 1]);
+            System.out.println("Selecting " + count + " landmarks");
+            long landmarksStart = System.currentTimeMillis();
+
+            var landmarks = graph.computeLandmarks(count);
+
+            long landmarksEnd = System.currentTimeMillis();
+            System.out.println("\tlandmark selection took " + (landmarksEnd - landmarksStart) + "ms, "
+                    + landmarks.getCount() + " landmarks");
+
+            System.out.println("Running A* landmark queries for queries in .que file " + quePath);
+            int mismatches = 0;
+            long altSettled = 0;
+            long altStart = System.nanoTime();
+            try (var altFinder = graph.getClosestPathFinder()) {
+                for (int[] query : queries) {
+                    if (altFinder.getShortestPath(query[0], query[1], landmarks) != query[2]) {
+                        mismatches++;
+                    }
+                    altSettled += altFinder.getSettledNodes();
+                }
+            }
+            long altEnd = System.nanoTime();
+            System.out.println("\tprocessing .que file took " + (altEnd - altStart) / 1_000_000 + "ms ("
+                    + (altEnd - altStart) / 1_000 / Math.max(1, queries.size()) + "us per query), " + mismatches
+                    + " distances differ from Dijkstra");
+            System.out.println("\tsettled " + altSettled / Math.max(1, queries.size()) + " nodes per query, Dijkstra "
+                    + dijkstraSettled / Math.max(1, queries.size()));
+        }
+
+        if (contract) {
+            System.out.println("Building contraction hierarchy");
+            long contractStart = System.currentTimeMillis();
+
+            var hierarchy = graph.contract();
+
+            long contractEnd = System.currentTimeMillis();
+            System.out.println("\tcontraction took " + (contractEnd - contractStart) + "ms, " + hierarchy.getNumEdges()
+                    + " hierarchy edges");
+
+            System.out.println("Running contraction hierarchy queries for queries in .que file " + quePath);
+            int mismatches = 0;
+            long chStart = System.nanoTime();
+            try (var chFinder = hierarchy.getPathFinder()) {
+                for (int[] query : queries) {
+                    if (chFinder.getShortestPath(query[0], query[1]) != query[2]) {
+                        mismatches++;
+                    }
+                }
+            }
+            long chEnd = System.nanoTime();
+            System.out.println("\tprocessing .que file took " + (chEnd - chStart) / 1_000_000 + "ms ("
+                    + (chEnd - chStart) / 1_000 / Math.max(1, queries.size()) + "us per query), " + mismatches
+                    + " distances differ from Dijkstra");
+        }
 
         System.out.println("Computing one-to-all Dijkstra from node id " + sourceNodeId);
         long oneToAllStart = System.currentTimeMillis();
@@ -63,6 +209,22 @@ public class Benchmark {
         long oneToAllEnd = System.currentTimeMillis();
         System.out.println("\tone-to-all Dijkstra took " + (oneToAllEnd - oneToAllStart) + "ms");
 
+        System.out.println("Computing parallel one-to-all delta-stepping from node id " + sourceNodeId);
+        long parallelStart = System.currentTimeMillis();
+        int parallelMismatches = 0;
+        try (var parallelFinder = graph.getClosestPathFinder()) {
+            parallelFinder.getShortestPathParallel(sourceNodeId);
+            long parallelEnd = System.currentTimeMillis();
+
+            for (int node = 0; node < graph.getNumNodes(); node++) {
+                if (parallelFinder.getDistance(node) != closesPath.getDistance(node)) {
+                    parallelMismatches++;
+                }
+            }
+            System.out.println("\tparallel one-to-all took " + (parallelEnd - parallelStart) + "ms, "
+                    + parallelMismatches + " distances differ from Dijkstra");
+        }
+
         // ask user for a target node id
         System.out.print("Enter target node id... ");
         try (var in = new Scanner(System.in)) {
@@ -73,4 +235,19 @@ public class Benchmark {
             System.out.println("Distance from " + sourceNodeId + " to " + targetNodeId + " is " + oneToAllDistance);
         }
     }
+
+    /**
+     * @return the bytes per edge and per node of the compact graph against the original one
+     */
+    static String describeCompaction(Graph graph, Graph compact) {
+        double edges = Math.max(1, graph.getNumEdges());
+        double nodes = Math.max(1, graph.getNumNodes());
+        return String.format(
+                Locale.US,
+                "%.2f bytes per edge (%.2f before), %.2f bytes per node (%.2f before)",
+                compact.getEdgeBytes() / edges,
+                graph.getEdgeBytes() / edges,
+                compact.getNodeBytes() / nodes,
+                graph.getNodeBytes() / nodes);
+    }
 }
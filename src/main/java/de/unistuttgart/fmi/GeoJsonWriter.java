@@ -0,0 +1,169 @@
+package de.unistuttgart.fmi;
+
+import de.unistuttgart.fmi.graph.AlternativeRoutes.Route;
+import de.unistuttgart.fmi.graph.Graph;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes paths as the GeoJSON responses of /path and /alternatives straight into an output stream.
+ *
+ * The coordinates are formatted with six decimals like {@code String.format("%f")}, but as
+ * fixed-point integers into a byte buffer that is reused for every path written by this writer.
+ * A writer must only be used by one thread at a time.
+ */
+class GeoJsonWriter {
+
+    private static final byte[] COLLECTION_HEADER =
+            "{\"geojson\":{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COLLECTION_FOOTER = "]}}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FEATURE_HEADER =
+            "{\"type\":\"Feature\",\"properties\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GEOMETRY_HEADER =
+            ",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FEATURE_FOOTER = "]}}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SEPARATOR = ",".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO_PROPERTIES = "{}".getBytes(StandardCharsets.US_ASCII);
+    /** longest coordinate pair, "[-180.000000,-90.000000]," has 25 bytes */
+    private static final int MAX_PAIR_LENGTH = 32;
+
+    private static final int DECIMALS = 1_000_000;
+
+    private final byte[] buffer = new byte[8192];
+    private int position;
+
+    /**
+     * Writes the path given by its node ids as a GeoJSON line string of [longitude, latitude]
+     * pairs. The output stream is neither flushed nor closed.
+     */
+    void writePath(Graph graph, int[] path, OutputStream output) throws IOException {
+        writePath(graph, null, path, null, output);
+    }
+
+    /**
+     * Writes the path like {@link #writePath(Graph, int[], OutputStream)}, from the point first
+     * over the nodes of path to the point last. The points are given as latitude and longitude,
+     * or null to start or end at the nodes. A point at the position of its neighbouring node is
+     * left out.
+     */
+    void writePath(Graph graph, double[] first, int[] path, double[] last, OutputStream output) throws IOException {
+        position = 0;
+        write(COLLECTION_HEADER, output);
+        write(FEATURE_HEADER, output);
+        write(NO_PROPERTIES, output);
+        write(GEOMETRY_HEADER, output);
+        boolean separate = false;
+        if (first != null && !(path.length > 0 && isAt(graph, path[0], first))) {
+            writePair(first[0], first[1], false, output);
+            separate = true;
+        }
+        for (int node : path) {
+            writePair(graph.getLatitude(node), graph.getLongitude(node), separate, output);
+            separate = true;
+        }
+        if (last != null && !(path.length > 0 && isAt(graph, path[path.length - 1], last))) {
+            writePair(last[0], last[1], separate, output);
+        }
+        write(FEATURE_FOOTER, output);
+        write(COLLECTION_FOOTER, output);
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Writes every route as a line string feature of its own, in the given order and with its
+     * distance as property {"distance":..}. The output stream is neither flushed nor closed.
+     */
+    void writeRoutes(Graph graph, List<Route> routes, OutputStream output) throws IOException {
+        position = 0;
+        write(COLLECTION_HEADER, output);
+        for (int i = 0; i < routes.size(); i++) {
+            if (i > 0) {
+                write(SEPARATOR, output);
+            }
+            write(FEATURE_HEADER, output);
+            write(("{\"distance\":" + routes.get(i).distance() + "}").getBytes(StandardCharsets.US_ASCII), output);
+            write(GEOMETRY_HEADER, output);
+            boolean separate = false;
+            for (int node : routes.get(i).nodes()) {
+                writePair(graph.getLatitude(node), graph.getLongitude(node), separate, output);
+                separate = true;
+            }
+            write(FEATURE_FOOTER, output);
+        }
+        write(COLLECTION_FOOTER, output);
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private static boolean isAt(Graph graph, int node, double[] point) {
+        return graph.getLatitude(node) == point[0] && graph.getLongitude(node) == point[1];
+    }
+
+    private void writePair(double lat, double lon, boolean separate, OutputStream output) throws IOException {
+        if (position > buffer.length - MAX_PAIR_LENGTH) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+        if (separate) {
+            buffer[position++] = ',';
+        }
+        buffer[position++] = '[';
+        writeCoordinate(lon);
+        buffer[position++] = ',';
+        writeCoordinate(lat);
+        buffer[position++] = ']';
+    }
+
+    private void write(byte[] bytes, OutputStream output) throws IOException {
+        if (position + bytes.length > buffer.length) {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Appends value rounded to six decimals, e.g. 9.100000 or -0.500000.
+     */
+    private void writeCoordinate(double value) {
+        // rounded half away from zero like %f
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        double shifted = value * DECIMALS;
+        long scaled = Math.round(shifted);
+        if (Math.abs(shifted - Math.floor(shifted) - 0.5) < 1e-6) {
+            // near a tie like 9.1234565, %f rounds the shortest decimal representation of value
+            // half up. It is on the same side of the tie as value, or the tie itself if that
+            // parses to value.
+            long floor = (long) Math.floor(shifted);
+            scaled = value >= (2 * floor + 1) / (2.0 * DECIMALS) ? floor + 1 : floor;
+        }
+
+        long integer = scaled / DECIMALS;
+        int fraction = (int) (scaled % DECIMALS);
+
+        // digits are written backwards, dividing by the constant 10 only
+        int digits = 1;
+        for (long rest = integer / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        }
+        position += digits;
+
+        buffer[position++] = '.';
+        for (int i = position + 5; i >= position; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        position += 6;
+    }
+}
@@ -0,0 +1,106 @@
+package de.unistuttgart.fmi;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for the {@link com.sun.net.httpserver.HttpServer} that admits a bounded number of
+ * requests. Requests beyond that are run directly on the dispatcher thread with
+ * {@link #isShedding()} set, so a filter can answer them with 503 without doing any work.
+ */
+class LoadSheddingExecutor implements Executor {
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private final ExecutorService delegate;
+    private final int capacity;
+    private final Semaphore admitted;
+    // limits the running requests on virtual threads, a fixed pool limits them by its size
+    private final Semaphore running;
+    private final LongAdder active = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    LoadSheddingExecutor(ServerConfig config) {
+        this.capacity = config.threads() + config.queueCapacity();
+        this.admitted = new Semaphore(capacity);
+        if (config.virtualThreads()) {
+            this.delegate = Executors.newVirtualThreadPerTaskExecutor();
+            this.running = new Semaphore(config.threads());
+        } else {
+            this.delegate = Executors.newFixedThreadPool(config.threads());
+            this.running = null;
+        }
+    }
+
+    static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            shed.increment();
+            SHEDDING.set(Boolean.TRUE);
+            try {
+                task.run();
+            } finally {
+                SHEDDING.remove();
+            }
+            return;
+        }
+        try {
+            delegate.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            if (running != null) {
+                running.acquireUninterruptibly();
+            }
+            active.increment();
+            try {
+                task.run();
+            } finally {
+                active.decrement();
+                if (running != null) {
+                    running.release();
+                }
+            }
+        } finally {
+            admitted.release();
+        }
+    }
+
+    /**
+     * @return the number of admitted requests, running or waiting for a thread
+     */
+    int admitted() {
+        return capacity - admitted.availablePermits();
+    }
+
+    /**
+     * @return the number of requests running on a thread
+     */
+    long active() {
+        return active.sum();
+    }
+
+    /**
+     * @return the number of requests answered with 503 so far
+     */
+    long shed() {
+        return shed.sum();
+    }
+
+    void shutdown() {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,76 @@
+package de.unistuttgart.fmi;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simple load generator for a running {@link Server}. Every client sends /path requests for the
+ * queries of a .que file in a loop and the throughput per status code is printed at the end.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // read parameters (parameters are expected in exactly this order)
+        String quePath = args[1];
+        int clients = Integer.parseInt(args[3]);
+        int seconds = Integer.parseInt(args[5]);
+        String baseUrl = args.length > 7 ? args[7] : "http://127.0.0.1:8080";
+
+        List<String> queries = Files.readAllLines(Path.of(quePath)).stream()
+                .filter(line -> !line.isBlank())
+                .map(line -> baseUrl + "/path?start=" + line.substring(0, line.indexOf(" ")) + "&end="
+                        + line.substring(line.indexOf(" ") + 1).trim())
+                .toList();
+
+        var client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(clients))
+                .build();
+        var statusCounts = new ConcurrentHashMap<Integer, LongAdder>();
+        var totalLatency = new LongAdder();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        System.out.println("Running " + clients + " clients for " + seconds + "s against " + baseUrl);
+        ExecutorService workers = Executors.newFixedThreadPool(clients);
+        for (int c = 0; c < clients; c++) {
+            int offset = c;
+            workers.execute(() -> {
+                int next = offset;
+                while (System.nanoTime() < end) {
+                    var request = HttpRequest.newBuilder(URI.create(queries.get(next++ % queries.size())))
+                            .build();
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding())
+                                .statusCode();
+                    } catch (IOException e) {
+                        status = -1;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    totalLatency.add(System.nanoTime() - start);
+                    statusCounts.computeIfAbsent(status, s -> new LongAdder()).increment();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+
+        long total = statusCounts.values().stream().mapToLong(LongAdder::sum).sum();
+        System.out.println("\t" + total + " requests, " + total / seconds + " requests/s, "
+                + totalLatency.sum() / Math.max(1, total) / 1_000 + "us mean latency");
+        statusCounts.forEach((status, count) -> System.out.println("\tstatus " + status + ": " + count.sum()));
+        System.exit(0);
+    }
+}
@@ -0,0 +1,214 @@
+package de.unistuttgart.fmi;
+
+import de.unistuttgart.fmi.graph.Graph;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of shortest paths by (start, end) node ids, bounded by the total number of path nodes it
+ * holds.
+ *
+ * Eviction follows a segmented LRU: new routes enter a probation segment, and routes hit again
+ * move to a protected segment of 80% of the capacity, so a burst of one-off queries can not push
+ * out the popular routes. Concurrent misses of the same route wait for a single search.
+ *
+ * The cache belongs to one graph at a time, set by {@link #reset(Graph)} when the server switches
+ * graphs, e.g. after a reload. Requests still running on another graph bypass it, and concurrent
+ * misses only wait for searches on the same graph.
+ */
+class RouteCache {
+
+    /**
+     * @param distance the length of the route, -1 if end is unreachable
+     * @param nodes the node ids of the route, empty if end is unreachable
+     */
+    record Route(int distance, int[] nodes) {
+        static final Route UNREACHABLE = new Route(-1, new int[0]);
+
+        /**
+         * @return the cost of keeping the route, its node count plus a constant for the entry
+         */
+        long weight() {
+            return nodes.length + 16;
+        }
+    }
+
+    private final long maxWeight;
+    private final long maxProtectedWeight;
+    private final LinkedHashMap<Long, Route> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Route> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationWeight;
+    private long protectedWeight;
+    // the current graph with its running searches, replaced as a whole by reset
+    private volatile Generation generation = new Generation(null);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The graph of the cache and the searches running on it, by their key.
+     */
+    private record Generation(Graph graph, ConcurrentHashMap<Long, CompletableFuture<Route>> searches) {
+        Generation(Graph graph) {
+            this(graph, new ConcurrentHashMap<>());
+        }
+    }
+
+    RouteCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+        this.maxProtectedWeight = maxWeight * 4 / 5;
+    }
+
+    /**
+     * @return the cached route from start to end on graph, or the route found by search, which
+     *     runs once for concurrent requests of the same route. Exceptions of search are thrown to
+     *     all of them and nothing is cached. If graph is not the graph of the cache, search runs
+     *     without it.
+     */
+    Route get(Graph graph, int start, int end, Supplier<Route> search) {
+        Generation generation = this.generation;
+        if (graph != generation.graph) {
+            misses.increment();
+            return search.get();
+        }
+        var searches = generation.searches;
+        long key = ((long) start << 32) | (end & 0xffffffffL);
+        Route cached = lookup(graph, key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        var future = new CompletableFuture<Route>();
+        var running = searches.putIfAbsent(key, future);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        misses.increment();
+        try {
+            Route route = search.get();
+            insert(graph, key, route);
+            future.complete(route);
+            return route;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            searches.remove(key, future);
+        }
+    }
+
+    private synchronized Route lookup(Graph graph, long key) {
+        if (graph != generation.graph) {
+            return null;
+        }
+
+        Route route = protectedSegment.get(key);
+        if (route != null) {
+            return route;
+        }
+        route = probation.remove(key);
+        if (route == null) {
+            return null;
+        }
+        // hit twice, so it moves to the protected segment, whose oldest routes get another chance
+        probationWeight -= route.weight();
+        protectedSegment.put(key, route);
+        protectedWeight += route.weight();
+        for (Iterator<Map.Entry<Long, Route>> oldest =
+                        protectedSegment.entrySet().iterator();
+                protectedWeight > maxProtectedWeight; ) {
+            var entry = oldest.next();
+            oldest.remove();
+            protectedWeight -= entry.getValue().weight();
+            probation.put(entry.getKey(), entry.getValue());
+            probationWeight += entry.getValue().weight();
+        }
+        evict();
+        return route;
+    }
+
+    private synchronized void insert(Graph graph, long key, Route route) {
+        if (graph != generation.graph
+                || route.weight() > maxWeight
+                || probation.containsKey(key)
+                || protectedSegment.containsKey(key)) {
+            return;
+        }
+        probation.put(key, route);
+        probationWeight += route.weight();
+        evict();
+    }
+
+    /**
+     * Removes the least recently used routes of probation, then of the protected segment, until
+     * the weight fits.
+     */
+    private void evict() {
+        for (Iterator<Route> oldest = probation.values().iterator();
+                probationWeight + protectedWeight > maxWeight && oldest.hasNext(); ) {
+            probationWeight -= oldest.next().weight();
+            oldest.remove();
+            evictions.increment();
+        }
+        for (Iterator<Route> oldest = protectedSegment.values().iterator();
+                probationWeight + protectedWeight > maxWeight && oldest.hasNext(); ) {
+            protectedWeight -= oldest.next().weight();
+            oldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Removes all routes and makes graph the graph of the cache. Searches still running on the
+     * previous graph complete for their waiting requests, but their routes are not cached.
+     */
+    synchronized void reset(Graph graph) {
+        generation = new Generation(graph);
+        probation.clear();
+        protectedSegment.clear();
+        probationWeight = 0;
+        protectedWeight = 0;
+    }
+
+    synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    synchronized long weight() {
+        return probationWeight + protectedWeight;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of misses that waited for the search of a concurrent request
+     */
+    long coalesced() {
+        return coalesced.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+}
@@ -1,36 +1,247 @@
 package de.unistuttgart.fmi;
 
+import com.sun.net.httpserver.Filter;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import de.unistuttgart.fmi.RouteCache.Route;
+import de.unistuttgart.fmi.graph.AlternativeRoutes;
 import de.unistuttgart.fmi.graph.Graph;
+import de.unistuttgart.fmi.graph.InvalidGraphException;
+import de.unistuttgart.fmi.graph.Profile;
+import de.unistuttgart.fmi.graph.SearchTimeoutException;
+import de.unistuttgart.fmi.graph.Snap;
+import de.unistuttgart.fmi.metrics.Histogram;
+import de.unistuttgart.fmi.metrics.Metrics;
+import de.unistuttgart.fmi.metrics.RequestEvent;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
 
 public class Server {
-    private final Graph graph;
+    private static final Histogram ROUTE_SETTLED_NODES = Metrics.sizes(
+            "routeplanner_route_settled_nodes", "Nodes settled per /path search of any path finder", "", 26);
+
+    // replaced by reloads and weight updates, every request uses the graph it read first
+    private volatile Graph graph;
+    private final String graphPath;
+    // null if the graph can not be reloaded
+    private final GraphLoader loader;
+    // runs reloads and the preprocessing of graphs with changed weights one at a time
+    private final ExecutorService maintenance = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("graph-maintenance").daemon().factory());
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicLong graphVersion = new AtomicLong();
+    // preprocessing of the loaded graph, which graphs with changed weights get in the background
+    private boolean contract;
+    private int landmarkCount;
+    private final ServerConfig config;
     private final HttpServer server;
+    private final LoadSheddingExecutor executor;
+    // null if disabled
+    private final RouteCache routeCache;
 
     public Server(Graph graph) {
+        this(graph, ServerConfig.defaults());
+    }
+
+    public Server(Graph graph, ServerConfig config) {
+        this(graph, config, null, null);
+    }
+
+    /**
+     * @param graphPath the file graph was loaded from, the only one reloaded by {@link #reload()}
+     * @param loader loads and preprocesses the graph of a file like graph, or null to disable
+     *     reloads
+     */
+    public Server(Graph graph, ServerConfig config, String graphPath, GraphLoader loader) {
+        graph.setConcurrency(config.threads());
         this.graph = graph;
+        this.graphPath = graphPath;
+        this.loader = loader;
+        this.contract = graph.isContracted();
+        this.landmarkCount = graph.getLandmarks() != null ? graph.getLandmarks().getCount() : 0;
+        this.config = config;
         try {
             this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 8080), -1);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        server.createContext("/", new RootHandler());
-        server.createContext("/coords", new CoordinateHandler());
-        server.createContext("/path", new PathHandler());
+        this.executor = new LoadSheddingExecutor(config);
+        this.routeCache = config.cacheNodes() > 0 ? new RouteCache(config.cacheNodes()) : null;
+        if (routeCache != null) {
+            routeCache.reset(graph);
+        }
+        server.setExecutor(executor);
+
+        registerMetrics();
+        var loadShedding = new LoadSheddingFilter();
+        for (var context : List.of(
+                server.createContext("/", new RootHandler()),
+                server.createContext("/coords", new CoordinateHandler()),
+                server.createContext("/path", new PathHandler()),
+                server.createContext("/alternatives", new AlternativesHandler()),
+                server.createContext("/isochrone", new IsochroneHandler()),
+                server.createContext("/matrix", new MatrixHandler()),
+                server.createContext("/weights", new WeightsHandler()),
+                server.createContext("/reload", new ReloadHandler()),
+                server.createContext("/metrics", new MetricsHandler()))) {
+            context.getFilters().add(new MetricsFilter(context.getPath()));
+            context.getFilters().add(loadShedding);
+        }
 
         server.start();
-        System.out.println("Server listening on http://127.0.0.1:8080/");
+        System.out.println("Server listening on http://127.0.0.1:8080/ with " + config.threads()
+                + (config.virtualThreads() ? " virtual" : "") + " threads");
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        maintenance.shutdownNow();
+        if (routeCache != null) {
+            System.out.println("\troute cache: " + routeCache.hits() + " hits, " + routeCache.misses() + " misses, "
+                    + routeCache.coalesced() + " coalesced, " + routeCache.evictions() + " evictions, "
+                    + routeCache.size() + " routes");
+        }
+    }
+
+    /**
+     * Loads and preprocesses the graph of a file for {@link Server#reload()}.
+     */
+    @FunctionalInterface
+    public interface GraphLoader {
+        Graph load(String path) throws InvalidGraphException;
+    }
+
+    /**
+     * Loads the graph file the server was started with again in the background and switches to
+     * it once it is ready. Requests started before finish on the old graph, which is freed after
+     * the last of them. Changed weights of the old graph are not kept.
+     *
+     * @return false if another reload is still running
+     * @throws IllegalStateException if the server has no {@link GraphLoader}
+     */
+    public boolean reload() {
+        if (loader == null) {
+            throw new IllegalStateException("the server was started without a graph loader");
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            return false;
+        }
+        maintenance.execute(() -> {
+            try {
+                long reloadStart = System.currentTimeMillis();
+                Graph loaded = loader.load(graphPath);
+                synchronized (this) {
+                    contract = loaded.isContracted();
+                    landmarkCount = loaded.getLandmarks() != null
+                            ? loaded.getLandmarks().getCount()
+                            : 0;
+                    swap(loaded);
+                }
+                long reloadEnd = System.currentTimeMillis();
+                System.out.println("\treload of " + graphPath + " took " + (reloadEnd - reloadStart) + "ms");
+            } catch (InvalidGraphException | RuntimeException e) {
+                System.out.println("Reload of " + graphPath + " failed, keeping the current graph: " + e.getMessage());
+            } finally {
+                reloading.set(false);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Switches to a copy of the current graph with changed edge weights, see
+     * {@link Graph#withEdgeWeights(int[], int[], int[])}. The copy is searched without the
+     * contraction hierarchy, and without landmarks if a weight decreased, until they are rebuilt
+     * for it in the background.
+     */
+    public synchronized void updateWeights(int[] sources, int[] targets, int[] weights) {
+        Graph updated = graph.withEdgeWeights(sources, targets, weights);
+        swap(updated);
+        if (contract || (landmarkCount > 0 && updated.getLandmarks() == null)) {
+            boolean rebuildHierarchy = contract;
+            int count = landmarkCount;
+            maintenance.execute(() -> {
+                // later updates replaced the graph already, their own task preprocesses it
+                if (graph != updated) {
+                    return;
+                }
+                long preprocessingStart = System.currentTimeMillis();
+                if (rebuildHierarchy) {
+                    updated.contract();
+                } else {
+                    updated.computeLandmarks(count);
+                }
+                long preprocessingEnd = System.currentTimeMillis();
+                System.out.println("\t" + (rebuildHierarchy ? "contraction" : "landmark selection")
+                        + " after weight update took "
+                        + (preprocessingEnd - preprocessingStart) + "ms");
+            });
+        }
+    }
+
+    private void swap(Graph next) {
+        next.setConcurrency(config.threads());
+        graph = next;
+        graphVersion.incrementAndGet();
+        if (routeCache != null) {
+            routeCache.reset(next);
+        }
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge(
+                "routeplanner_graph_version", "Graphs switched to by reloads and weight updates", graphVersion::get);
+        Metrics.gauge(
+                "routeplanner_executor_admitted_requests",
+                "Requests admitted by the executor, running or queued",
+                executor::admitted);
+        Metrics.gauge("routeplanner_executor_active_requests", "Requests running on a thread", executor::active);
+        Metrics.counter("routeplanner_executor_shed_requests_total", "Requests answered with 503", executor::shed);
+        if (routeCache != null) {
+            Metrics.counter("routeplanner_route_cache_hits_total", "Routes answered from the cache", routeCache::hits);
+            Metrics.counter(
+                    "routeplanner_route_cache_misses_total", "Routes searched on a cache miss", routeCache::misses);
+            Metrics.counter(
+                    "routeplanner_route_cache_coalesced_total",
+                    "Cache misses that waited for a concurrent search",
+                    routeCache::coalesced);
+            Metrics.counter(
+                    "routeplanner_route_cache_evictions_total", "Routes evicted from the cache", routeCache::evictions);
+            Metrics.gauge("routeplanner_route_cache_routes", "Routes in the cache", routeCache::size);
+            Metrics.gauge("routeplanner_route_cache_nodes", "Path nodes held by the cache", routeCache::weight);
+        }
+    }
+
+    private void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
     }
 
     public Map<String, String> parseGetQuery(String query) {
@@ -46,6 +257,199 @@ public class Server {
         return result;
     }
 
+    /**
+     * Answers requests the executor could not admit with 503 instead of processing them.
+     */
+    private class LoadSheddingFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (LoadSheddingExecutor.isShedding()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendEmpty(exchange, 503);
+                return;
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Rejects requests exceeding the queue capacity";
+        }
+    }
+
+    /**
+     * Records the duration and status of the requests of one context, and a {@link RequestEvent}
+     * per request while JFR records.
+     */
+    private static class MetricsFilter extends Filter {
+        // statuses from -1 to 599 have their counter in statusCounters at status + 1
+        private static final int MAX_STATUS = 599;
+
+        private final String endpoint;
+        private final Histogram duration;
+        // request counters of the endpoint by status, resolved from the registry on first use
+        private final AtomicReferenceArray<LongAdder> statusCounters = new AtomicReferenceArray<>(MAX_STATUS + 2);
+
+        MetricsFilter(String endpoint) {
+            this.endpoint = endpoint;
+            this.duration = Metrics.latency(
+                    "routeplanner_http_request_duration_seconds",
+                    "Duration of HTTP requests until the response is written",
+                    "endpoint=\"" + endpoint + "\"");
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            var event = new RequestEvent();
+            event.begin();
+            long startNanos = System.nanoTime();
+            try {
+                chain.doFilter(exchange);
+            } finally {
+                duration.record(System.nanoTime() - startNanos);
+                // -1 if the handler failed before sending a response
+                int status = exchange.getResponseCode();
+                requests(status).increment();
+                if (event.shouldCommit()) {
+                    event.endpoint = endpoint;
+                    event.query = exchange.getRequestURI().getRawQuery();
+                    event.status = status;
+                    event.commit();
+                }
+            }
+        }
+
+        private LongAdder requests(int status) {
+            if (status < -1 || status > MAX_STATUS) {
+                return counter(status);
+            }
+            LongAdder counter = statusCounters.get(status + 1);
+            if (counter == null) {
+                // the registry returns the same counter to concurrent first uses
+                counter = counter(status);
+                statusCounters.set(status + 1, counter);
+            }
+            return counter;
+        }
+
+        private LongAdder counter(int status) {
+            return Metrics.counter(
+                    "routeplanner_http_requests_total",
+                    "HTTP requests by endpoint and status",
+                    "endpoint=\"" + endpoint + "\",status=\"" + status + "\"");
+        }
+
+        @Override
+        public String description() {
+            return "Records request metrics";
+        }
+    }
+
+    /**
+     * Applies the edge weights in the body of POST requests, one edge per line as "source target
+     * weight" with node ids of the .fmi file, where a weight of -1 closes the edge. All changes of
+     * a request become visible at once.
+     */
+    private class WeightsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendEmpty(exchange, 405);
+                return;
+            }
+
+            String[] lines = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)
+                    .strip()
+                    .split("\\R");
+            int[] sources = new int[lines.length];
+            int[] targets = new int[lines.length];
+            int[] weights = new int[lines.length];
+            int count = 0;
+            try {
+                for (String line : lines) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    String[] edge = line.strip().split("\\s+");
+                    if (edge.length != 3) {
+                        throw new IllegalArgumentException("expected source target weight: " + line);
+                    }
+                    sources[count] = Integer.parseInt(edge[0]);
+                    targets[count] = Integer.parseInt(edge[1]);
+                    weights[count] = Integer.parseInt(edge[2]);
+                    count++;
+                }
+                updateWeights(
+                        Arrays.copyOf(sources, count), Arrays.copyOf(targets, count), Arrays.copyOf(weights, count));
+            } catch (IllegalArgumentException e) {
+                sendEmpty(exchange, 400);
+                return;
+            } catch (UnsupportedOperationException e) {
+                // the graph is compact
+                sendEmpty(exchange, 501);
+                return;
+            }
+
+            byte[] response = ("{\"edges\":" + count + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response);
+            }
+        }
+    }
+
+    /**
+     * Starts a reload of the graph file the server was started with on POST requests. Answers 202
+     * while it runs in the background, 409 if a reload is running, or 400 if graph=.. names any
+     * other file, so clients can not make the server read or write files of their choice.
+     */
+    private class ReloadHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendEmpty(exchange, 405);
+                return;
+            }
+            if (loader == null) {
+                sendEmpty(exchange, 501);
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            String path = query != null ? parseGetQuery(query).get("graph") : null;
+            if (path != null && !isGraphFile(URLDecoder.decode(path, StandardCharsets.UTF_8))) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            sendEmpty(exchange, reload() ? 202 : 409);
+        }
+
+        private boolean isGraphFile(String path) {
+            try {
+                return Path.of(path).toRealPath().equals(Path.of(graphPath).toRealPath());
+            } catch (IOException | InvalidPathException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Answers /metrics with all metrics in the Prometheus text format.
+     */
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer =
+                    new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                Metrics.write(writer);
+            }
+        }
+    }
+
     private class RootHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
@@ -61,17 +465,69 @@ public class Server {
     }
 
     private class CoordinateHandler implements HttpHandler {
+        // candidates of k=.., whose arrays stay allocated in the scratch space of the handler thread
+        private static final int MAX_K = 100;
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            Graph graph = Server.this.graph;
             var nodes = parseGetQuery(exchange.getRequestURI().getQuery());
 
-            double lat = Double.parseDouble(nodes.get("lat"));
-            double lon = Double.parseDouble(nodes.get("lon"));
-
-            double[] neighbour = graph.getNearestNeighbour(new double[] {lat, lon});
+            double lat;
+            double lon;
+            int k;
+            try {
+                lat = Double.parseDouble(nodes.get("lat"));
+                lon = Double.parseDouble(nodes.get("lon"));
+                k = nodes.containsKey("k") ? Integer.parseInt(nodes.get("k")) : 1;
+            } catch (NumberFormatException | NullPointerException e) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            if (k < 1 || k > MAX_K) {
+                sendEmpty(exchange, 400);
+                return;
+            }
 
-            String response = String.format(
-                    Locale.US, "{\"lat\":%f,\"lon\":%f,\"id\":%d}", neighbour[0], neighbour[1], (int) neighbour[2]);
+            String response;
+            if (nodes.containsKey("edge")) {
+                // the nearest point on a road, where /path starts for these coordinates, or with
+                // largest=1 on a road of the largest component, connected to most of the graph
+                Snap[] snaps = graph.snap(lat, lon, 1, nodes.containsKey("largest"));
+                if (snaps.length == 0) {
+                    sendEmpty(exchange, 404);
+                    return;
+                }
+                Snap snap = snaps[0];
+                response = String.format(
+                        Locale.US,
+                        "{\"lat\":%f,\"lon\":%f,\"id\":%d,\"source\":%d,\"target\":%d,\"fraction\":%f}",
+                        snap.latitude(),
+                        snap.longitude(),
+                        snap.fraction() < 0.5 ? snap.source() : snap.target(),
+                        snap.source(),
+                        snap.target(),
+                        snap.fraction());
+            } else if (nodes.containsKey("k")) {
+                // several candidates for the caller to choose from, nearest first
+                int[] candidates = graph.getNearestNeighbours(lat, lon, k);
+                StringBuilder builder = new StringBuilder("[");
+                for (int i = 0; i < candidates.length; i++) {
+                    double[] coordinates = graph.getCoordinates(candidates[i]);
+                    builder.append(i > 0 ? "," : "")
+                            .append(String.format(
+                                    Locale.US,
+                                    "{\"lat\":%f,\"lon\":%f,\"id\":%d}",
+                                    coordinates[0],
+                                    coordinates[1],
+                                    candidates[i]));
+                }
+                response = builder.append("]").toString();
+            } else {
+                double[] neighbour = graph.getNearestNeighbour(new double[] {lat, lon});
+                response = String.format(
+                        Locale.US, "{\"lat\":%f,\"lon\":%f,\"id\":%d}", neighbour[0], neighbour[1], (int) neighbour[2]);
+            }
 
             exchange.getResponseHeaders().set("Content-Type", "application/json");
             exchange.sendResponseHeaders(200, response.getBytes(StandardCharsets.UTF_8).length);
@@ -82,42 +538,503 @@ public class Server {
         }
     }
 
+    /**
+     * Answers /path?start=..&end=.. with the shortest path as GeoJSON, streamed with chunked
+     * transfer encoding and compressed with gzip if the client accepts it. Paths between node ids
+     * are taken from the {@link RouteCache} if enabled.
+     *
+     * Start and end may also be coordinates like 48.74,9.10, which are snapped to the nearest
+     * points on roads. The path then starts and ends at these points, between the nodes of their
+     * edges. If no path connects the nearest points, e.g. because one lies on a road cut off from
+     * the rest of the network, the next nearest candidates are tried, and last the nearest point
+     * in the largest strongly connected component. Candidates that can not be connected are
+     * rejected by the components of the graph without searching.
+     *
+     * With profile=.., e.g. profile=time, the path minimizes the weights of a {@link Profile}
+     * loaded with -profiles instead of the weights of the file, found by Dijkstra's algorithm and
+     * not cached.
+     */
     public class PathHandler implements HttpHandler {
+        // candidates of snapped coordinates, tried in the order of their combined distance
+        private static final int SNAP_CANDIDATES = 4;
+
+        private final ThreadLocal<GeoJsonWriter> writers = ThreadLocal.withInitial(GeoJsonWriter::new);
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             var nodes = parseGetQuery(exchange.getRequestURI().getQuery());
 
-            var pathfinder = graph.getClosestPathFinder();
-            int distance = pathfinder.getShortestPath(
-                    Integer.parseInt(nodes.get("start")), Integer.parseInt(nodes.get("end")));
-            if (distance == -1) {
+            String startLocation = URLDecoder.decode(nodes.get("start"), StandardCharsets.UTF_8);
+            String endLocation = URLDecoder.decode(nodes.get("end"), StandardCharsets.UTF_8);
+            Graph graph = Server.this.graph;
+            Route route;
+            // the points of snapped coordinates before and after the nodes of the route
+            double[] first = null;
+            double[] last = null;
+            try {
+                Profile profile = nodes.containsKey("profile") ? Profile.of(nodes.get("profile")) : Profile.DEFAULT;
+                if (!graph.hasProfile(profile)) {
+                    throw new IllegalArgumentException("profile " + profile + " is not loaded");
+                }
+                if (startLocation.contains(",") || endLocation.contains(",")) {
+                    var snapped = search(graph, snap(graph, startLocation), snap(graph, endLocation), profile);
+                    route = snapped.route();
+                    if (snapped.start() != null) {
+                        first = new double[] {
+                            snapped.start().latitude(), snapped.start().longitude()
+                        };
+                        last = new double[] {
+                            snapped.end().latitude(), snapped.end().longitude()
+                        };
+                    }
+                } else {
+                    int start = Integer.parseInt(startLocation);
+                    int end = Integer.parseInt(endLocation);
+                    route = routeCache != null && profile == Profile.DEFAULT
+                            ? routeCache.get(graph, start, end, () -> search(graph, start, end, profile))
+                            : search(graph, start, end, profile);
+                }
+            } catch (SearchTimeoutException e) {
+                sendEmpty(exchange, 504);
+                return;
+            } catch (IllegalArgumentException e) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            if (route.distance() == -1) {
                 exchange.sendResponseHeaders(404, 0);
                 try (OutputStream outputStream = exchange.getResponseBody()) {
                     outputStream.write(new byte[0]);
                 }
                 return;
             }
-            String jsonResponse = convertPathToJson(pathfinder.getPath());
 
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream =
+                    gzip ? new GZIPOutputStream(exchange.getResponseBody(), 8192) : exchange.getResponseBody()) {
+                writers.get().writePath(graph, first, route.nodes(), last, outputStream);
+            }
+        }
+
+        /**
+         * @return the snap candidates of coordinates like "48.74,9.10", nearest first and followed by
+         *     the nearest one in the largest component unless among them, or the snap of a node id
+         */
+        private Snap[] snap(Graph graph, String location) {
+            int comma = location.indexOf(',');
+            if (comma == -1) {
+                return new Snap[] {graph.snap(Integer.parseInt(location))};
+            }
+            double lat = Double.parseDouble(location.substring(0, comma).strip());
+            double lon = Double.parseDouble(location.substring(comma + 1).strip());
+            Snap[] snaps = graph.snap(lat, lon, SNAP_CANDIDATES);
+            Snap[] largest = graph.snap(lat, lon, 1, true);
+            if (largest.length == 0 || Arrays.asList(snaps).contains(largest[0])) {
+                return snaps;
+            }
+            Snap[] candidates = Arrays.copyOf(snaps, snaps.length + 1);
+            candidates[snaps.length] = largest[0];
+            return candidates;
+        }
+
+        /**
+         * @return the route between the first pair of start and end candidates that are connected,
+         *     by their combined distance to the snapped coordinates
+         */
+        private SnappedRoute search(Graph graph, Snap[] starts, Snap[] ends, Profile profile) {
+            Integer[] pairs = new Integer[starts.length * ends.length];
+            for (int i = 0; i < pairs.length; i++) {
+                pairs[i] = i;
+            }
+            Arrays.sort(
+                    pairs,
+                    Comparator.comparingDouble(
+                            pair -> starts[pair / ends.length].distance() + ends[pair % ends.length].distance()));
+            try (var pathfinder = graph.getPathFinder(profile)) {
+                if (config.timeoutMillis() > 0) {
+                    pathfinder.setDeadline(System.nanoTime() + config.timeoutMillis() * 1_000_000);
+                }
+                for (int pair : pairs) {
+                    Snap start = starts[pair / ends.length];
+                    Snap end = ends[pair % ends.length];
+                    int distance = pathfinder.getShortestPath(start, end, profile);
+                    ROUTE_SETTLED_NODES.record(pathfinder.getSettledNodes());
+                    if (distance != -1) {
+                        return new SnappedRoute(new Route(distance, pathfinder.getPathNodes()), start, end);
+                    }
+                }
+            }
+            return new SnappedRoute(Route.UNREACHABLE, null, null);
+        }
+
+        /**
+         * A route between the points of two snaps, which are null if there is none.
+         */
+        private record SnappedRoute(Route route, Snap start, Snap end) {}
+
+        private Route search(Graph graph, int start, int end, Profile profile) {
+            try (var pathfinder = graph.getPathFinder(profile)) {
+                if (config.timeoutMillis() > 0) {
+                    pathfinder.setDeadline(System.nanoTime() + config.timeoutMillis() * 1_000_000);
+                }
+                int distance = pathfinder.getShortestPath(start, end, profile);
+                ROUTE_SETTLED_NODES.record(pathfinder.getSettledNodes());
+                return distance == -1 ? Route.UNREACHABLE : new Route(distance, pathfinder.getPathNodes());
+            }
+        }
+    }
+
+    /**
+     * Answers /alternatives?start=..&end=.. with the shortest path and up to two alternatives as
+     * separate features of a GeoJSON feature collection, the shortest first, found by
+     * {@link de.unistuttgart.fmi.graph.AlternativeRoutes}. count=.. asks for another number of
+     * routes, at most {@link #MAX_COUNT}. Start and end are node ids or coordinates like
+     * 48.74,9.10, which are snapped to the nearer node of the nearest road. Compact graphs answer
+     * with 501.
+     */
+    public class AlternativesHandler implements HttpHandler {
+        private static final int DEFAULT_COUNT = 3;
+        private static final int MAX_COUNT = 5;
+
+        private final ThreadLocal<GeoJsonWriter> writers = ThreadLocal.withInitial(GeoJsonWriter::new);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            var parameters = parseGetQuery(exchange.getRequestURI().getQuery());
+            Graph graph = Server.this.graph;
+            List<AlternativeRoutes.Route> routes;
+            try {
+                int start = parseNode(graph, parameters.get("start"));
+                int end = parseNode(graph, parameters.get("end"));
+                int count = parameters.containsKey("count") ? Integer.parseInt(parameters.get("count")) : DEFAULT_COUNT;
+                if (count < 1 || count > MAX_COUNT) {
+                    throw new IllegalArgumentException("count must be between 1 and " + MAX_COUNT);
+                }
+                try (var alternatives = graph.getAlternativeRoutes()) {
+                    if (config.timeoutMillis() > 0) {
+                        alternatives.setDeadline(System.nanoTime() + config.timeoutMillis() * 1_000_000);
+                    }
+                    routes = alternatives.find(start, end, count);
+                    ROUTE_SETTLED_NODES.record(alternatives.getSettledNodes());
+                }
+            } catch (SearchTimeoutException e) {
+                sendEmpty(exchange, 504);
+                return;
+            } catch (IllegalArgumentException | NullPointerException e) {
+                sendEmpty(exchange, 400);
+                return;
+            } catch (UnsupportedOperationException e) {
+                // compact graphs
+                sendEmpty(exchange, 501);
+                return;
+            }
+            if (routes.isEmpty()) {
+                sendEmpty(exchange, 404);
+                return;
+            }
+
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
             exchange.getResponseHeaders().set("Content-Type", "application/json");
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes(StandardCharsets.UTF_8).length);
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream outputStream =
+                    gzip ? new GZIPOutputStream(exchange.getResponseBody(), 8192) : exchange.getResponseBody()) {
+                writers.get().writeRoutes(graph, routes, outputStream);
+            }
+        }
+
+        /**
+         * @return the node id, or the nearer node of the road nearest to coordinates like
+         *     "48.74,9.10"
+         */
+        private int parseNode(Graph graph, String location) {
+            location = URLDecoder.decode(location, StandardCharsets.UTF_8);
+            int comma = location.indexOf(',');
+            if (comma == -1) {
+                int node = Integer.parseInt(location.strip());
+                if (node < 0 || node >= graph.getNumNodes()) {
+                    throw new IllegalArgumentException("unknown node " + node);
+                }
+                return node;
+            }
+            double lat = Double.parseDouble(location.substring(0, comma).strip());
+            double lon = Double.parseDouble(location.substring(comma + 1).strip());
+            Snap[] snaps = graph.snap(lat, lon, 1);
+            if (snaps.length == 0) {
+                return (int) graph.getNearestNeighbour(new double[] {lat, lon})[2];
+            }
+            return snaps[0].fraction() < 0.5 ? snaps[0].source() : snaps[0].target();
+        }
+    }
+
+    /**
+     * Answers POST requests with a body like {"sources":[1,[48.7,9.1]],"targets":[2,3]}, where
+     * every location is a node id or a [lat, lon] pair snapped to the nearer node of the nearest
+     * road, with the distances from every source to every target, -1 if unreachable.
+     *
+     * The rows are streamed as JSON while they are written, or as little-endian 32 bit integers
+     * (sources, targets, then the rows) if the request accepts application/octet-stream.
+     */
+    public class MatrixHandler implements HttpHandler {
+        private static final int MAX_ENTRIES = 1_000_000;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendEmpty(exchange, 405);
+                return;
+            }
+
+            Graph graph = Server.this.graph;
+            int[] sources;
+            int[] targets;
+            try {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                sources = parseLocations(graph, body, "sources");
+                targets = parseLocations(graph, body, "targets");
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            if ((long) sources.length * targets.length > MAX_ENTRIES) {
+                sendEmpty(exchange, 413);
+                return;
+            }
+
+            int[][] distances;
+            try {
+                var matrix = graph.getDistanceMatrix(sources, targets);
+                if (config.timeoutMillis() > 0) {
+                    matrix.setDeadline(System.nanoTime() + config.timeoutMillis() * 1_000_000);
+                }
+                distances = matrix.compute();
+            } catch (SearchTimeoutException e) {
+                sendEmpty(exchange, 504);
+                return;
+            }
+
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            if (accept != null && accept.contains("application/octet-stream")) {
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream output = new BufferedOutputStream(exchange.getResponseBody(), 1 << 16)) {
+                    output.write(toBytes(sources));
+                    output.write(toBytes(targets));
+                    for (int[] row : distances) {
+                        output.write(toBytes(row));
+                    }
+                }
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 1 << 16)) {
+                writer.write("{\"sources\":");
+                writer.write(Arrays.toString(sources).replace(" ", ""));
+                writer.write(",\"targets\":");
+                writer.write(Arrays.toString(targets).replace(" ", ""));
+                writer.write(",\"distances\":[");
+                for (int i = 0; i < distances.length; i++) {
+                    writer.write(i > 0 ? ",[" : "[");
+                    int[] row = distances[i];
+                    for (int j = 0; j < row.length; j++) {
+                        if (j > 0) {
+                            writer.write(',');
+                        }
+                        writer.write(Integer.toString(row[j]));
+                    }
+                    writer.write(']');
+                }
+                writer.write("]}");
+            }
+        }
+
+        private static byte[] toBytes(int[] values) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asIntBuffer().put(values);
+            return buffer.array();
+        }
+
+        /**
+         * @return the node ids of the array of locations under key in the JSON body
+         * @throws IllegalArgumentException if the array is missing or malformed
+         */
+        private int[] parseLocations(Graph graph, String body, String key) {
+            int position = body.indexOf("\"" + key + "\"");
+            if (position == -1) {
+                throw new IllegalArgumentException("missing " + key);
+            }
+            position = body.indexOf('[', position);
+            int end = position;
+            int depth = 0;
+            do {
+                char c = body.charAt(end++);
+                depth += c == '[' ? 1 : c == ']' ? -1 : 0;
+            } while (depth > 0);
+
+            // the content without the outer brackets, split into elements at top level commas
+            String content = body.substring(position + 1, end - 1).strip();
+            int[] nodes = new int[8];
+            int count = 0;
+            int start = 0;
+            depth = 0;
+            for (int i = 0; i <= content.length() && !content.isEmpty(); i++) {
+                char c = i < content.length() ? content.charAt(i) : ',';
+                if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                } else if (c == ',' && depth == 0) {
+                    if (count == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, 2 * count);
+                    }
+                    nodes[count++] =
+                            parseLocation(graph, content.substring(start, i).strip());
+                    start = i + 1;
+                }
+            }
+            return Arrays.copyOf(nodes, count);
+        }
+
+        private int parseLocation(Graph graph, String location) {
+            if (!location.startsWith("[")) {
+                int node = Integer.parseInt(location);
+                if (node < 0 || node >= graph.getNumNodes()) {
+                    throw new IllegalArgumentException("unknown node " + node);
+                }
+                return node;
+            }
+            String[] coordinates = location.substring(1, location.length() - 1).split(",");
+            if (coordinates.length != 2) {
+                throw new IllegalArgumentException("expected [lat, lon]: " + location);
+            }
+            double lat = Double.parseDouble(coordinates[0].strip());
+            double lon = Double.parseDouble(coordinates[1].strip());
+            // the nearer node of the nearest road, which may be farther than the nearest node
+            Snap[] snaps = graph.snap(lat, lon, 1);
+            if (snaps.length == 0) {
+                return (int) graph.getNearestNeighbour(new double[] {lat, lon})[2];
+            }
+            return snaps[0].fraction() < 0.5 ? snaps[0].source() : snaps[0].target();
+        }
+    }
+
+    /**
+     * Answers /isochrone?start=..&budget=.. (or lat=..&lon=.. instead of start) with the nodes
+     * reachable within the distance budget, found by a parallel search that stops at the budget.
+     * The result is a GeoJSON polygon of their convex hull, or the node ids if nodes=1 is given.
+     */
+    public class IsochroneHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            Graph graph = Server.this.graph;
+            var parameters = parseGetQuery(exchange.getRequestURI().getQuery());
+
+            int start;
+            int budget;
+            try {
+                start = parameters.containsKey("start")
+                        ? Integer.parseInt(parameters.get("start"))
+                        : (int) graph.getNearestNeighbour(new double[] {
+                            Double.parseDouble(parameters.get("lat")), Double.parseDouble(parameters.get("lon"))
+                        })[2];
+                budget = Integer.parseInt(parameters.get("budget"));
+            } catch (NumberFormatException | NullPointerException e) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+            if (start < 0 || start >= graph.getNumNodes() || budget < 0) {
+                sendEmpty(exchange, 400);
+                return;
+            }
+
+            int[] nodes;
+            try (var finder = graph.getClosestPathFinder()) {
+                if (config.timeoutMillis() > 0) {
+                    finder.setDeadline(System.nanoTime() + config.timeoutMillis() * 1_000_000);
+                }
+                nodes = finder.getNodesWithinDistance(start, budget);
+            } catch (SearchTimeoutException e) {
+                sendEmpty(exchange, 504);
+                return;
+            }
+
+            String response;
+            if (parameters.containsKey("nodes")) {
+                response = "{\"start\":" + start + ",\"budget\":" + budget + ",\"nodes\":"
+                        + Arrays.toString(nodes).replace(" ", "") + "}";
+            } else {
+                StringBuilder builder = new StringBuilder(
+                        "{\"type\":\"Feature\",\"properties\":{\"start\":" + start + ",\"budget\":" + budget
+                                + ",\"nodes\":" + nodes.length
+                                + "},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+                double[][] hull = convexHull(graph, nodes);
+                for (int i = 0; i <= hull.length; i++) {
+                    // the ring is closed by repeating the first point
+                    double[] point = hull[i % hull.length];
+                    builder.append(i > 0 ? "," : "").append(String.format(Locale.US, "[%f,%f]", point[1], point[0]));
+                }
+                response = builder.append("]]}}").toString();
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
             try (OutputStream outputStream = exchange.getResponseBody()) {
-                outputStream.write(jsonResponse.getBytes(StandardCharsets.UTF_8));
+                outputStream.write(bytes);
             }
         }
 
-        private String convertPathToJson(List<double[]> path) {
-            StringBuilder jsonBuilder = new StringBuilder("{\"geojson\":");
-            var last = path.removeLast();
+        /**
+         * @return the convex hull of the coordinates of the given nodes in counterclockwise order,
+         *     by Andrew's monotone chain
+         */
+        private double[][] convexHull(Graph graph, int[] nodes) {
+            double[][] points = new double[nodes.length][];
+            for (int i = 0; i < nodes.length; i++) {
+                points[i] = graph.getCoordinates(nodes[i]);
+            }
+            // sorted by longitude (x), then latitude (y)
+            Arrays.sort(points, (a, b) -> a[1] != b[1] ? Double.compare(a[1], b[1]) : Double.compare(a[0], b[0]));
+            if (points.length < 3) {
+                return points;
+            }
 
-            jsonBuilder.append(
-                    "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
-            for (double[] node : path) {
-                jsonBuilder.append(String.format(Locale.US, "[%f,%f],", node[1], node[0]));
+            double[][] hull = new double[2 * points.length][];
+            int size = 0;
+            // lower chain left to right, then upper chain right to left
+            for (int i = 0; i < points.length; i++) {
+                while (size >= 2 && cross(hull[size - 2], hull[size - 1], points[i]) <= 0) {
+                    size--;
+                }
+                hull[size++] = points[i];
+            }
+            for (int i = points.length - 2, lower = size + 1; i >= 0; i--) {
+                while (size >= lower && cross(hull[size - 2], hull[size - 1], points[i]) <= 0) {
+                    size--;
+                }
+                hull[size++] = points[i];
             }
-            jsonBuilder.append(String.format(Locale.US, "[%f,%f]", last[1], last[0]));
-            jsonBuilder.append("]}}]}}");
-            return jsonBuilder.toString();
+            // the last point is the first one again
+            return Arrays.copyOf(hull, size - 1);
+        }
+
+        private static double cross(double[] origin, double[] a, double[] b) {
+            return (a[1] - origin[1]) * (b[0] - origin[0]) - (a[0] - origin[0]) * (b[1] - origin[1]);
         }
     }
 }
@@ -0,0 +1,43 @@
+package de.unistuttgart.fmi;
+
+/**
+ * Settings of the {@link Server}.
+ *
+ * @param threads number of requests processed at the same time
+ * @param virtualThreads run every request on its own virtual thread instead of a fixed pool
+ * @param queueCapacity number of requests waiting for a free slot, further requests are rejected
+ *     with 503
+ * @param timeoutMillis time after which a running search is cancelled with 504, 0 for no limit
+ * @param cacheNodes number of path nodes kept by the {@link RouteCache}, 0 to disable it
+ */
+public record ServerConfig(
+        int threads, boolean virtualThreads, int queueCapacity, long timeoutMillis, long cacheNodes) {
+
+    public static ServerConfig defaults() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new ServerConfig(threads, false, 4 * threads, 10_000, 4_000_000);
+    }
+
+    /**
+     * Reads the optional arguments -threads, -virtual, -queue, -timeout (in milliseconds) and
+     * -cache (in path nodes).
+     */
+    public static ServerConfig fromArgs(String[] args) {
+        var defaults = defaults();
+        int threads = Integer.parseInt(option(args, "-threads", String.valueOf(defaults.threads())));
+        boolean virtualThreads = option(args, "-virtual", null) != null;
+        int queueCapacity = Integer.parseInt(option(args, "-queue", String.valueOf(4 * threads)));
+        long timeoutMillis = Long.parseLong(option(args, "-timeout", String.valueOf(defaults.timeoutMillis())));
+        long cacheNodes = Long.parseLong(option(args, "-cache", String.valueOf(defaults.cacheNodes())));
+        return new ServerConfig(threads, virtualThreads, queueCapacity, timeoutMillis, cacheNodes);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals(name)) {
+                return i + 1 < args.length && !args[i + 1].startsWith("-") ? args[i + 1] : "";
+            }
+        }
+        return defaultValue;
+    }
+}
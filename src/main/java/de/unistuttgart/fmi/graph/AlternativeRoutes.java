@@ -0,0 +1,305 @@
+package de.unistuttgart.fmi.graph;
+
+import de.unistuttgart.fmi.metrics.SearchEvent;
+import de.unistuttgart.fmi.metrics.SearchMetrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Alternatives to the shortest path by the plateau method of Abraham et al., "Alternative Routes
+ * in Road Networks".
+ *
+ * A forward shortest path tree grows from the start and a backward one from the target, both until
+ * their radius exceeds the shortest distance times {@link #MAX_STRETCH}. A plateau is a path
+ * whose edges belong to both trees. The route from the start through the forward tree to the
+ * first node of a plateau, along it and through the backward tree to the target is the shortest
+ * path over any of its nodes. Plateaus are tried by their length and detour, and their routes
+ * are accepted if
+ *
+ * <ul>
+ *   <li>they are at most {@link #MAX_STRETCH} times as long as the shortest path,
+ *   <li>their plateau covers at least {@link #MIN_PLATEAU} of the shortest distance, so that
+ *       every part of the route up to that length is a shortest path, and
+ *   <li>at most {@link #MAX_SHARING} of the shortest distance is shared with the routes accepted
+ *       before.
+ * </ul>
+ *
+ * The shortest path of the forward tree always comes first. Both searches borrow their arrays from
+ * the pools of the graph like {@link BidirectionalPathFinder} and hand them back by
+ * {@link #close()}. Instances must only be used by one thread at a time.
+ */
+public class AlternativeRoutes implements AutoCloseable {
+
+    /** maximum length of an alternative relative to the shortest path */
+    static final double MAX_STRETCH = 1.25;
+    /** minimum length of the plateau of an alternative relative to the shortest path */
+    static final double MIN_PLATEAU = 0.2;
+    /** maximum length an alternative shares with accepted routes, relative to the shortest path */
+    static final double MAX_SHARING = 0.8;
+    // plateaus whose routes are checked at most, so rejected candidates can not take long
+    private static final int MAX_CANDIDATES = 32;
+
+    private static final SearchMetrics METRICS = new SearchMetrics("alternatives");
+
+    /**
+     * @param distance the length of the route
+     * @param nodes the node ids of the route, from start to target
+     */
+    public record Route(int distance, int[] nodes) {}
+
+    private final Graph graph;
+    private final Graph reversed;
+    private SearchState forward;
+    private SearchState backward;
+    // plateaus as their score in the upper and first node in the lower half, reused by queries
+    private long[] candidates = new long[64];
+    private long deadline;
+    private boolean hasDeadline;
+    private int settledNodes;
+    private long relaxedEdges;
+    private long queueUpdates;
+
+    AlternativeRoutes(Graph graph) {
+        this.graph = graph;
+        this.reversed = graph.reversed();
+        this.forward = graph.acquireSearchState(QueueType.DEFAULT);
+        this.backward = reversed.acquireSearchState(QueueType.DEFAULT);
+    }
+
+    /**
+     * Makes following queries throw a {@link SearchTimeoutException} once {@link System#nanoTime()}
+     * passes the given deadline.
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * @return the shortest path from start to target followed by up to count - 1 alternatives in
+     *     the order they were accepted, or no route if target is unreachable
+     */
+    public List<Route> find(int start, int target, int count) {
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        List<Route> routes = search(graph.internal(start), graph.internal(target), count);
+        METRICS.record(event, startNanos, start, target, settledNodes, relaxedEdges, settledNodes + queueUpdates);
+        return routes;
+    }
+
+    /**
+     * @return the number of nodes settled by both searches of the last query
+     */
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    private List<Route> search(int start, int target, int count) {
+        settledNodes = 0;
+        relaxedEdges = 0;
+        queueUpdates = 2;
+        List<Route> routes = new ArrayList<>();
+        if (count <= 0 || graph.isUnreachable(start, target)) {
+            return routes;
+        }
+
+        forward.reset();
+        forward.update(start, 0, start);
+        grow(graph, forward, target, SearchState.INFINITY, null);
+        int distance = forward.distances[target];
+        if (distance == SearchState.INFINITY) {
+            return routes;
+        }
+        int limit = (int) Math.min(SearchState.INFINITY - 1L, (long) Math.floor(distance * MAX_STRETCH));
+        grow(graph, forward, -1, limit, null);
+        backward.reset();
+        backward.update(target, 0, target);
+        grow(reversed, backward, -1, limit, forward.distances);
+
+        int numCandidates = collectPlateaus(start, target, distance, limit);
+        Arrays.sort(candidates, 0, numCandidates);
+
+        // nodes of the accepted routes carry the accepted mark, the shortest path is the route
+        // over the target, which ties between the trees may leave without a plateau of its own
+        int[] accepted = forward.marks();
+        int acceptedMark = forward.nextMark();
+        accept(start, target, routes, accepted, acceptedMark);
+        for (int i = 0; i < Math.min(numCandidates, MAX_CANDIDATES) && routes.size() < count; i++) {
+            int via = (int) candidates[i];
+            if (isAcceptable(start, via, distance, accepted, acceptedMark)) {
+                accept(start, via, routes, accepted, acceptedMark);
+            }
+        }
+        return routes;
+    }
+
+    private void accept(int start, int via, List<Route> routes, int[] accepted, int acceptedMark) {
+        int[] nodes = route(start, via);
+        for (int node : nodes) {
+            accepted[node] = acceptedMark;
+        }
+        routes.add(new Route(forward.distances[via] + backward.distances[via], graph.toExternal(nodes)));
+    }
+
+    /**
+     * Runs Dijkstra's algorithm on the state until it settles stop or its queue holds no node at
+     * most limit away. Nodes whose distance plus their distance in prune, unless null, exceeds
+     * limit are not expanded: every node behind them is at least as far from both ends, so no
+     * route of at most limit passes it.
+     */
+    private void grow(Graph graph, SearchState state, int stop, int limit, int[] prune) {
+        int[] distances = state.distances;
+        NodeQueue queue = state.queue;
+        while (!queue.isEmpty() && distances[queue.peek()] <= limit) {
+            int current = queue.poll();
+            if ((++settledNodes & 1023) == 0 && hasDeadline && System.nanoTime() - deadline > 0) {
+                throw new SearchTimeoutException();
+            }
+            if (prune != null && (long) prune[current] + distances[current] > limit) {
+                continue;
+            }
+
+            int firstEdgeIdx = graph.offsetArray[current];
+            int lastEdgeIdx = graph.offsetArray[current + 1];
+            relaxedEdges += lastEdgeIdx - firstEdgeIdx;
+            for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
+                int neighbour = graph.edgeTargets[i];
+                int distance = distances[current] + graph.edgeWeights[i];
+                if (distance < distances[neighbour]) {
+                    state.update(neighbour, distance, current);
+                    queueUpdates++;
+                }
+            }
+            if (current == stop) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stores the first node of every plateau whose route is at most limit long and that is at
+     * least {@link #MIN_PLATEAU} of distance long in candidates, scored by the length of its
+     * route minus half its own length, half the score of the paper without the sharing.
+     *
+     * @return the number of candidates
+     */
+    private int collectPlateaus(int start, int target, int distance, int limit) {
+        int[] forwardDistances = forward.distances;
+        int[] backwardDistances = backward.distances;
+        long minPlateau = (long) Math.ceil(distance * MIN_PLATEAU);
+        int numCandidates = 0;
+        for (int i = 0; i < forward.getTouchedCount(); i++) {
+            int first = forward.getTouched(i);
+            long length = (long) forwardDistances[first] + backwardDistances[first];
+            if (length > limit || isOnPlateau(forward.predecessors[first], first, limit)) {
+                continue;
+            }
+            // a node settled by both searches, whose edge from the forward tree is not in the
+            // backward tree, starts a plateau
+            int last = first;
+            while (last != target && isOnPlateau(last, backward.predecessors[last], limit)) {
+                last = backward.predecessors[last];
+            }
+            long plateau = forwardDistances[last] - forwardDistances[first];
+            if (plateau < minPlateau) {
+                continue;
+            }
+            if (numCandidates == candidates.length) {
+                candidates = Arrays.copyOf(candidates, 2 * numCandidates);
+            }
+            candidates[numCandidates++] = (length - plateau / 2) << 32 | first;
+        }
+        return numCandidates;
+    }
+
+    /**
+     * @return whether the edge from the internal node id from to to is in both trees, which are
+     *     final up to limit
+     */
+    private boolean isOnPlateau(int from, int to, int limit) {
+        return from != to
+                && forward.predecessors[to] == from
+                && backward.predecessors[from] == to
+                && forward.distances[to] <= limit
+                && backward.distances[from] <= limit;
+    }
+
+    /**
+     * @return whether the route over via is a simple path sharing at most {@link #MAX_SHARING} of
+     *     distance with the nodes of the accepted routes. An edge between two accepted nodes
+     *     counts as shared.
+     */
+    private boolean isAcceptable(int start, int via, int distance, int[] accepted, int acceptedMark) {
+        int[] visited = backward.marks();
+        int visitedMark = backward.nextMark();
+        long shared = 0;
+        long maxShared = (long) (distance * MAX_SHARING);
+        for (int node = via; ; node = forward.predecessors[node]) {
+            visited[node] = visitedMark;
+            int predecessor = forward.predecessors[node];
+            if (node == start) {
+                break;
+            }
+            if (accepted[node] == acceptedMark && accepted[predecessor] == acceptedMark) {
+                shared += forward.distances[node] - forward.distances[predecessor];
+            }
+        }
+        for (int node = via; ; ) {
+            int next = backward.predecessors[node];
+            if (next == node) {
+                break;
+            }
+            if (visited[next] == visitedMark) {
+                return false;
+            }
+            visited[next] = visitedMark;
+            if (accepted[node] == acceptedMark && accepted[next] == acceptedMark) {
+                shared += backward.distances[node] - backward.distances[next];
+            }
+            node = next;
+        }
+        return shared <= maxShared;
+    }
+
+    /**
+     * @return the internal node ids of the route from start through the forward tree to via and
+     *     through the backward tree to the target
+     */
+    private int[] route(int start, int via) {
+        int forwardLength = 0;
+        for (int node = via; node != start; node = forward.predecessors[node]) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for (int node = via; backward.predecessors[node] != node; node = backward.predecessors[node]) {
+            backwardLength++;
+        }
+        int[] nodes = new int[forwardLength + 1 + backwardLength];
+        int node = via;
+        for (int i = forwardLength; i >= 0; i--) {
+            nodes[i] = node;
+            node = forward.predecessors[node];
+        }
+        node = via;
+        for (int i = forwardLength + 1; i < nodes.length; i++) {
+            node = backward.predecessors[node];
+            nodes[i] = node;
+        }
+        return nodes;
+    }
+
+    /**
+     * Hands the search arrays back to the graph. The instance must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (forward != null) {
+            graph.releaseSearchState(forward);
+            reversed.releaseSearchState(backward);
+            forward = null;
+            backward = null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.List;
+
+/**
+ * Bidirectional Dijkstra: a forward search from the start on the graph and a backward search from
+ * the target on the reversed graph, each settling the node with the smaller distance next.
+ *
+ * Whenever an edge connects a node reached by both searches, the path over it is a candidate. The
+ * shortest candidate is final once the sum of the smallest queued distances of both searches is
+ * not smaller than it. Both search states are pooled like the one of {@link ClosestPathFinder}.
+ */
+public class BidirectionalPathFinder implements PathFinder {
+
+    private static final int INFINITY = SearchState.INFINITY;
+
+    private final Graph graph;
+    private final Graph reversed;
+    private SearchState forward;
+    private SearchState backward;
+    // node where the paths of both searches meet, -1 if the last path has no nodes
+    private int meetingNode;
+    private int settledNodes;
+    private long deadline;
+    private boolean hasDeadline;
+
+    BidirectionalPathFinder(Graph graph) {
+        this.graph = graph;
+        this.reversed = graph.reversed();
+        this.forward = graph.acquireSearchState(QueueType.DEFAULT);
+        this.backward = reversed.acquireSearchState(QueueType.DEFAULT);
+    }
+
+    @Override
+    public int getShortestPath(int start, int target) {
+        start = graph.internal(start);
+        target = graph.internal(target);
+        this.meetingNode = -1;
+        this.settledNodes = 0;
+        if (graph.isUnreachable(start, target)) {
+            Components.REJECTED_QUERIES.increment();
+            return -1;
+        }
+
+        forward.reset();
+        backward.reset();
+        forward.update(start, 0, start);
+        backward.update(target, 0, target);
+
+        int best = INFINITY;
+        if (start == target) {
+            best = 0;
+            meetingNode = start;
+        }
+        return search(best);
+    }
+
+    /**
+     * Starts the forward search at both nodes of the edge of start and the backward search at
+     * both nodes of the edge of target, with the weights between them and the points.
+     */
+    @Override
+    public int getShortestPath(Snap start, Snap target) {
+        this.meetingNode = -1;
+        this.settledNodes = 0;
+        if (graph.isUnreachable(start, target)) {
+            Components.REJECTED_QUERIES.increment();
+            return -1;
+        }
+
+        forward.reset();
+        backward.reset();
+        int startSource = graph.internal(start.source());
+        int startTarget = graph.internal(start.target());
+        seed(forward, startSource, start.toSource());
+        seed(forward, startTarget, start.toTarget());
+        seed(backward, graph.internal(target.source()), target.fromSource());
+        seed(backward, graph.internal(target.target()), target.fromTarget());
+
+        int along = start.along(target);
+        int best = along == -1 ? INFINITY : along;
+        // a node seeded by both searches
+        for (int node : new int[] {startSource, startTarget}) {
+            if (forward.distances[node] != INFINITY
+                    && backward.distances[node] != INFINITY
+                    && (long) forward.distances[node] + backward.distances[node] < best) {
+                best = forward.distances[node] + backward.distances[node];
+                meetingNode = node;
+            }
+        }
+        return search(best);
+    }
+
+    private static void seed(SearchState search, int node, int distance) {
+        if (distance != -1 && distance < search.distances[node]) {
+            search.update(node, distance, node);
+        }
+    }
+
+    /**
+     * Alternates both searches until the shortest path, at most best long, is final.
+     *
+     * @return its length, -1 if there is none
+     */
+    private int search(int best) {
+        NodeQueue forwardQueue = forward.queue;
+        NodeQueue backwardQueue = backward.queue;
+        while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+            int forwardMin = forward.distances[forwardQueue.peek()];
+            int backwardMin = backward.distances[backwardQueue.peek()];
+            if ((long) forwardMin + backwardMin >= best) {
+                break;
+            }
+
+            settledNodes++;
+            if (hasDeadline && (settledNodes & 1023) == 0 && System.nanoTime() - deadline > 0) {
+                throw new SearchTimeoutException();
+            }
+
+            if (forwardMin <= backwardMin) {
+                best = settleNext(graph, forward, backward, best);
+            } else {
+                best = settleNext(reversed, backward, forward, best);
+            }
+        }
+
+        return best == INFINITY ? -1 : best;
+    }
+
+    /**
+     * Settles the next node of search on the given graph and relaxes its edges.
+     *
+     * @return the length of the shortest path found so far, including the new candidates
+     */
+    private int settleNext(Graph graph, SearchState search, SearchState opposite, int best) {
+        int[] distances = search.distances;
+        int[] oppositeDistances = opposite.distances;
+        int current = search.queue.poll();
+
+        int firstEdgeIdx = graph.offsetArray[current];
+        int lastEdgeIdx = graph.offsetArray[current + 1];
+        for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
+            int neighbour = graph.edgeTargets[i];
+            int distance = distances[current] + graph.edgeWeights[i];
+
+            if (distance < distances[neighbour]) {
+                search.update(neighbour, distance, current);
+                if (oppositeDistances[neighbour] != INFINITY && distance + oppositeDistances[neighbour] < best) {
+                    best = distance + oppositeDistances[neighbour];
+                    meetingNode = neighbour;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of nodes settled by both searches of the last query
+     */
+    @Override
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    @Override
+    public List<double[]> getPath() {
+        return graph.coordinates(pathNodes());
+    }
+
+    @Override
+    public int[] getPathNodes() {
+        return graph.toExternal(pathNodes());
+    }
+
+    private int[] pathNodes() {
+        if (meetingNode == -1) {
+            return new int[0];
+        }
+        // both searches start at nodes that are their own predecessor
+        int forwardLength = 1;
+        for (int current = meetingNode;
+                forward.predecessors[current] != current;
+                current = forward.predecessors[current]) {
+            forwardLength++;
+        }
+        int length = forwardLength;
+        for (int current = meetingNode;
+                backward.predecessors[current] != current;
+                current = backward.predecessors[current]) {
+            length++;
+        }
+
+        int[] path = new int[length];
+        int current = meetingNode;
+        for (int i = forwardLength - 1; i >= 0; i--) {
+            path[i] = current;
+            current = forward.predecessors[current];
+        }
+        current = meetingNode;
+        for (int i = forwardLength; i < length; i++) {
+            current = backward.predecessors[current];
+            path[i] = current;
+        }
+        return path;
+    }
+
+    @Override
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * Hands both search states back to their graphs. The finder must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (forward != null) {
+            graph.releaseSearchState(forward);
+            reversed.releaseSearchState(backward);
+            forward = null;
+            backward = null;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bidirectional upward Dijkstra on a {@link ContractionHierarchy} with stall-on-demand.
+ *
+ * The search arrays are allocated once and only the touched entries are reset between queries.
+ * Finders are pooled by the hierarchy and handed back by {@link #close()}, which does nothing if
+ * the finder was already handed back.
+ */
+public class CHPathFinder implements PathFinder {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final ContractionHierarchy hierarchy;
+    private final Search forward;
+    private final Search backward;
+    // highest node of the last path, -1 if it has no nodes
+    private int meetingNode;
+    private int settledNodes;
+    private long deadline;
+    private boolean hasDeadline;
+    // whether the finder is in the pool of the hierarchy, so that it is only released once
+    boolean released;
+
+    CHPathFinder(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        int numNodes = hierarchy.ranks.length;
+        this.forward = new Search(numNodes, hierarchy.forwardOffsets, hierarchy.forwardEdges);
+        this.backward = new Search(numNodes, hierarchy.backwardOffsets, hierarchy.backwardEdges);
+        forward.opposite = backward;
+        backward.opposite = forward;
+    }
+
+    @Override
+    public int getShortestPath(int start, int target) {
+        Graph graph = hierarchy.graph;
+        this.meetingNode = -1;
+        this.settledNodes = 0;
+        if (graph.isUnreachable(graph.internal(start), graph.internal(target))) {
+            Components.REJECTED_QUERIES.increment();
+            return -1;
+        }
+        forward.reset(graph.internal(start));
+        backward.reset(graph.internal(target));
+        return search(INFINITY);
+    }
+
+    /**
+     * Starts the forward search at both nodes of the edge of start and the backward search at
+     * both nodes of the edge of target, with the weights between them and the points.
+     */
+    @Override
+    public int getShortestPath(Snap start, Snap target) {
+        Graph graph = hierarchy.graph;
+        this.meetingNode = -1;
+        this.settledNodes = 0;
+        if (graph.isUnreachable(start, target)) {
+            Components.REJECTED_QUERIES.increment();
+            return -1;
+        }
+        forward.reset();
+        backward.reset();
+        forward.seed(graph.internal(start.source()), start.toSource());
+        forward.seed(graph.internal(start.target()), start.toTarget());
+        backward.seed(graph.internal(target.source()), target.fromSource());
+        backward.seed(graph.internal(target.target()), target.fromTarget());
+        int along = start.along(target);
+        return search(along == -1 ? INFINITY : along);
+    }
+
+    /**
+     * Alternates both upward searches until no queued node can lead to a path shorter than the
+     * shortest one found, which starts at most best long.
+     *
+     * @return its length, -1 if there is none
+     */
+    private int search(int best) {
+        while (true) {
+            boolean forwardActive = !forward.queue.isEmpty() && forward.minDistance() < best;
+            boolean backwardActive = !backward.queue.isEmpty() && backward.minDistance() < best;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+
+            Search search = forwardActive && (!backwardActive || forward.minDistance() <= backward.minDistance())
+                    ? forward
+                    : backward;
+            int current = search.settleNext();
+            settledNodes++;
+            if (hasDeadline && (settledNodes & 1023) == 0 && System.nanoTime() - deadline > 0) {
+                throw new SearchTimeoutException();
+            }
+
+            int opposite = search.opposite.distances[current];
+            if (opposite != INFINITY && (long) search.distances[current] + opposite < best) {
+                best = search.distances[current] + opposite;
+                meetingNode = current;
+            }
+        }
+
+        return best == INFINITY ? -1 : best;
+    }
+
+    @Override
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    @Override
+    public void close() {
+        if (released) {
+            return;
+        }
+        hasDeadline = false;
+        released = true;
+        hierarchy.release(this);
+    }
+
+    @Override
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    /**
+     * Runs a complete upward search from the internal node source, forward or backward. The
+     * reached nodes and their distances are available from the returned search until the next
+     * search of this finder.
+     */
+    Search searchUpward(boolean forwardDirection, int source) {
+        Search search = forwardDirection ? forward : backward;
+        search.reset(source);
+        while (!search.queue.isEmpty()) {
+            search.settleNext();
+        }
+        return search;
+    }
+
+    @Override
+    public List<double[]> getPath() {
+        return hierarchy.graph.coordinates(pathNodes());
+    }
+
+    @Override
+    public int[] getPathNodes() {
+        return hierarchy.graph.toExternal(pathNodes());
+    }
+
+    private int[] pathNodes() {
+        if (meetingNode == -1) {
+            return new int[0];
+        }
+        int[] hierarchyPath = new int[16];
+        int length = 0;
+
+        // meeting node back to the start of the forward search, which is its own predecessor,
+        // reversed afterwards
+        int node = meetingNode;
+        for (; forward.predecessors[node] != node; node = forward.predecessors[node]) {
+            hierarchyPath = append(hierarchyPath, length++, node);
+        }
+        hierarchyPath = append(hierarchyPath, length++, node);
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int temp = hierarchyPath[i];
+            hierarchyPath[i] = hierarchyPath[j];
+            hierarchyPath[j] = temp;
+        }
+        for (node = meetingNode; backward.predecessors[node] != node; ) {
+            node = backward.predecessors[node];
+            hierarchyPath = append(hierarchyPath, length++, node);
+        }
+
+        int[] path = new int[Math.max(16, length)];
+        int pathLength = 0;
+        path = append(path, pathLength++, hierarchyPath[0]);
+        int[] stack = new int[64];
+        for (int i = 1; i < length; i++) {
+            // unpack the hierarchy edge, the stack holds (source, target) pairs
+            int stackSize = 0;
+            stack[stackSize++] = hierarchyPath[i - 1];
+            stack[stackSize++] = hierarchyPath[i];
+            while (stackSize > 0) {
+                int edgeTarget = stack[--stackSize];
+                int edgeSource = stack[--stackSize];
+                int middle = hierarchy.getMiddle(edgeSource, edgeTarget);
+                if (middle == -1) {
+                    path = append(path, pathLength++, edgeTarget);
+                    continue;
+                }
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[stackSize++] = middle;
+                stack[stackSize++] = edgeTarget;
+                stack[stackSize++] = edgeSource;
+                stack[stackSize++] = middle;
+            }
+        }
+        return Arrays.copyOf(path, pathLength);
+    }
+
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, 2 * array.length);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * One direction of the query, searching upwards along the given hierarchy edges.
+     */
+    static class Search {
+        private final int[] offsets;
+        private final int[] edges;
+        private final int[] distances;
+        private final int[] predecessors;
+        private final int[] touched;
+        private int touchedCount;
+        private final IndexedHeap queue;
+        private Search opposite;
+
+        Search(int numNodes, int[] offsets, int[] edges) {
+            this.offsets = offsets;
+            this.edges = edges;
+            this.distances = new int[numNodes];
+            this.predecessors = new int[numNodes];
+            this.touched = new int[numNodes];
+            this.queue = new IndexedHeap(numNodes, distances);
+            Arrays.fill(distances, INFINITY);
+        }
+
+        void reset(int source) {
+            reset();
+            seed(source, 0);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[touched[i]] = INFINITY;
+            }
+            touchedCount = 0;
+            queue.clear();
+        }
+
+        /**
+         * Starts the search at source with the given distance as well, unless it is -1.
+         */
+        void seed(int source, int distance) {
+            if (distance == -1 || distance >= distances[source]) {
+                return;
+            }
+            if (distances[source] == INFINITY) {
+                touched[touchedCount++] = source;
+            }
+            distances[source] = distance;
+            predecessors[source] = source;
+            queue.update(source);
+        }
+
+        int getTouchedCount() {
+            return touchedCount;
+        }
+
+        /**
+         * @return the i-th node reached by the search
+         */
+        int getTouched(int i) {
+            return touched[i];
+        }
+
+        int getDistance(int node) {
+            return distances[node];
+        }
+
+        int minDistance() {
+            return distances[queue.peek()];
+        }
+
+        int settleNext() {
+            int current = queue.poll();
+            int distance = distances[current];
+            if (isStalled(current, distance)) {
+                return current;
+            }
+
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int neighbour = edges[3 * i];
+                int newDistance = distance + edges[3 * i + 1];
+                if (newDistance < distances[neighbour]) {
+                    if (distances[neighbour] == INFINITY) {
+                        touched[touchedCount++] = neighbour;
+                    }
+                    distances[neighbour] = newDistance;
+                    predecessors[neighbour] = current;
+                    queue.update(neighbour);
+                }
+            }
+            return current;
+        }
+
+        /**
+         * A node is stalled if a higher ranked node reached by this search leads to it with a
+         * shorter distance through an edge of the opposite direction.
+         */
+        private boolean isStalled(int node, int distance) {
+            int[] oppositeEdges = opposite.edges;
+            for (int i = opposite.offsets[node]; i < opposite.offsets[node + 1]; i++) {
+                int neighbour = oppositeEdges[3 * i];
+                if (distances[neighbour] != INFINITY && distances[neighbour] + oppositeEdges[3 * i + 1] < distance) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,214 +1,500 @@
 package de.unistuttgart.fmi.graph;
 
+import de.unistuttgart.fmi.metrics.SearchEvent;
+import de.unistuttgart.fmi.metrics.SearchMetrics;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
-public class ClosestPathFinder {
+/**
+ * Dijkstra's algorithm on the adjacency array of a {@link Graph}. Once the graph has
+ * {@link Landmarks}, one-to-one queries run as A* search with the landmark lower bounds.
+ *
+ * Queries given a {@link Profile} search the weight array of the profile instead of the weights
+ * of the file. The array is only swapped for the query, so the search loop is the same for every
+ * profile.
+ *
+ * The search arrays are borrowed from a pool of the graph and handed back by {@link #close()},
+ * so repeated queries neither allocate nor clear arrays of the size of the graph. A finder must
+ * only be used by one thread at a time.
+ */
+public class ClosestPathFinder implements PathFinder {
+
+    private static final SearchMetrics DIJKSTRA_METRICS = new SearchMetrics("dijkstra");
+    private static final SearchMetrics A_STAR_METRICS = new SearchMetrics("astar");
+    private static final SearchMetrics ONE_TO_ALL_METRICS = new SearchMetrics("one_to_all");
+    private static final SearchMetrics DELTA_STEPPING_METRICS = new SearchMetrics("delta_stepping");
 
     private final Graph graph;
-    private int[] distances;
-    private int[] predecessors;
-    private int start;
+    // weights searched by the current query, the weights of the file unless a profile is given
+    private int[] weights;
+    private SearchState state;
+    // end of the path of the last query, -1 if it has no nodes
     private int target;
-
-    ClosestPathFinder(Graph graph) {
+    private long deadline;
+    private boolean hasDeadline;
+    private int settledNodes;
+    private int[] targetFrom = new int[0];
+    private int[] targetTo = new int[0];
+    // work of the last search besides settling nodes, counted for the metrics
+    private long relaxedEdges;
+    private long queueUpdates;
+    // decodes the edges of a compact graph, null otherwise
+    private final CompactEdges.Cursor cursor;
+
+    ClosestPathFinder(Graph graph, SearchState state) {
         this.graph = graph;
+        this.state = state;
+        this.weights = graph.edgeWeights;
+        this.cursor = graph.compactEdges != null ? graph.compactEdges.cursor() : null;
     }
 
     public int getDistance(int target) {
-        return distances[target];
+        return distance(graph.internal(target));
+    }
+
+    int distance(int node) {
+        return state.distances[node];
     }
 
+    @Override
     public List<double[]> getPath() {
-        List<double[]> path = new LinkedList<>();
+        return graph.coordinates(pathNodes());
+    }
 
-        int current = target;
-        while (current != start) {
-            path.addFirst(graph.nodes[current]);
-            current = predecessors[current];
+    @Override
+    public int[] getPathNodes() {
+        return graph.toExternal(pathNodes());
+    }
+
+    private int[] pathNodes() {
+        if (target == -1) {
+            return new int[0];
+        }
+        // the path starts at a node that is its own predecessor
+        int length = 1;
+        for (int current = target; state.predecessors[current] != current; current = state.predecessors[current]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int current = target; length > 0; current = state.predecessors[current]) {
+            path[--length] = current;
         }
-        path.addFirst(graph.nodes[start]);
         return path;
     }
 
-    public void getShortestPath(int start) {
-        int numNodes = graph.nodes.length;
-        distances = new int[numNodes];
-        boolean[] visited = new boolean[numNodes];
+    /**
+     * @return the number of nodes settled by the last query
+     */
+    @Override
+    public int getSettledNodes() {
+        return settledNodes;
+    }
 
-        Arrays.fill(distances, Integer.MAX_VALUE);
-        Arrays.fill(visited, false);
+    @Override
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
 
-        distances[start] = 0;
+    public void getShortestPath(int start) {
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        searchAll(graph.internal(start));
+        ONE_TO_ALL_METRICS.record(
+                event, startNanos, start, -1, settledNodes, relaxedEdges, settledNodes + queueUpdates);
+    }
 
-        PriorityQueue queue = new PriorityQueue(numNodes);
+    /**
+     * One-to-all search from the given internal node id.
+     */
+    void searchAll(int start) {
+        NodeQueue queue = state.queue;
 
-        queue.add(start);
+        state.reset();
+        state.update(start, 0, start);
 
+        settledNodes = 0;
+        relaxedEdges = 0;
+        queueUpdates = 1;
         while (!queue.isEmpty()) {
             int current = queue.poll();
+            checkDeadline(++settledNodes);
 
-            visited[current] = true;
-
-            int firstEdgeIdx = graph.offsetArray[current];
-            int lastEdgeIdx = graph.offsetArray[current + 1];
-            for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
-                int[] edge = graph.adjacencyArray[i];
+            relax(current);
+        }
+    }
 
-                if (visited[edge[1]]) {
-                    continue;
+    /**
+     * Lowers the distances of the neighbours of the internal node current, decoding its edges
+     * if the graph is compact.
+     */
+    private void relax(int current) {
+        int[] distances = state.distances;
+        if (cursor != null) {
+            int currentDistance = distances[current];
+            int edges = 0;
+            cursor.moveTo(current);
+            while (cursor.next()) {
+                edges++;
+                int neighbour = cursor.target();
+                int distance = currentDistance + cursor.weight();
+
+                if (distance < distances[neighbour]) {
+                    state.update(neighbour, distance, current);
+                    queueUpdates++;
                 }
-                int distance = distances[current] + edge[2];
+            }
+            relaxedEdges += edges;
+            return;
+        }
 
-                if (distance < distances[edge[1]]) {
-                    distances[edge[1]] = distance;
-                    queue.decreaseKey(edge[1]);
-                }
+        int[] weights = this.weights;
+        int firstEdgeIdx = graph.offsetArray[current];
+        int lastEdgeIdx = graph.offsetArray[current + 1];
+        relaxedEdges += lastEdgeIdx - firstEdgeIdx;
+        for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
+            int neighbour = graph.edgeTargets[i];
+            int distance = distances[current] + weights[i];
+
+            // settled nodes already have a distance at most as large
+            if (distance < distances[neighbour]) {
+                state.update(neighbour, distance, current);
+                queueUpdates++;
             }
         }
     }
 
-    public int getShortestPath(int start, int target) {
-        this.start = start;
-        this.target = target;
-        int numNodes = graph.nodes.length;
-        distances = new int[numNodes];
-        predecessors = new int[numNodes];
-        boolean[] visited = new boolean[numNodes];
+    /**
+     * One-to-all search like {@link #getShortestPath(int)} by {@link DeltaStepping} on all cores.
+     * The distances are available from {@link #getDistance(int)} afterwards, but no paths.
+     */
+    public void getShortestPathParallel(int start) {
+        searchAllParallel(graph.internal(start), SearchState.INFINITY);
+    }
 
-        Arrays.fill(distances, Integer.MAX_VALUE);
-        Arrays.fill(predecessors, -1);
-        Arrays.fill(visited, false);
+    /**
+     * @return the ids of all nodes at most limit away from start, found by a parallel search that
+     *     does not explore beyond limit. Their distances are available from
+     *     {@link #getDistance(int)} afterwards.
+     */
+    public int[] getNodesWithinDistance(int start, int limit) {
+        searchAllParallel(graph.internal(start), limit);
+        return graph.toExternal(state.reached());
+    }
 
-        distances[start] = 0;
-        predecessors[start] = start;
+    private void searchAllParallel(int start, int limit) {
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        var deltaStepping = new DeltaStepping(graph, state, graph.deltaStep());
+        settledNodes = deltaStepping.run(start, limit, this::checkDeadline);
+        // the worker threads do not count their edges and bucket operations
+        DELTA_STEPPING_METRICS.record(event, startNanos, graph.external(start), -1, settledNodes, 0, 0);
+    }
 
-        PriorityQueue queue = new PriorityQueue(numNodes);
-        queue.add(start);
+    /**
+     * Search from the internal node start that stops once all targets, given as sorted internal
+     * node ids, are settled. Their distances are available from {@link #distance(int)} afterwards.
+     */
+    void searchTargets(int start, int[] sortedTargets) {
+        NodeQueue queue = state.queue;
 
-        while (!queue.isEmpty()) {
+        state.reset();
+        state.update(start, 0, start);
+
+        settledNodes = 0;
+        int remainingTargets = 0;
+        for (int target : sortedTargets) {
+            if (!graph.isUnreachable(start, target)) {
+                remainingTargets++;
+            }
+        }
+        while (!queue.isEmpty() && remainingTargets > 0) {
             int current = queue.poll();
+            checkDeadline(++settledNodes);
 
-            if (current == target) {
-                return distances[current];
+            if (Arrays.binarySearch(sortedTargets, current) >= 0) {
+                remainingTargets--;
             }
 
-            visited[current] = true;
+            relax(current);
+        }
+    }
 
-            int firstEdgeIdx = graph.offsetArray[current];
-            int lastEdgeIdx = graph.offsetArray[current + 1];
-            for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
-                int[] edge = graph.adjacencyArray[i];
+    @Override
+    public int getShortestPath(int start, int target) {
+        Landmarks landmarks = graph.getLandmarks();
+        if (landmarks != null) {
+            return getShortestPath(start, target, landmarks);
+        }
 
-                if (visited[edge[1]]) {
-                    continue;
-                }
-                int distance = distances[current] + edge[2];
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        int distance = dijkstra(graph.internal(start), graph.internal(target));
+        DIJKSTRA_METRICS.record(
+                event, startNanos, start, target, settledNodes, relaxedEdges, settledNodes + queueUpdates);
+        return distance;
+    }
 
-                if (distance < distances[edge[1]]) {
-                    distances[edge[1]] = distance;
-                    queue.decreaseKey(edge[1]);
-                    predecessors[edge[1]] = current;
-                }
-            }
+    /**
+     * Dijkstra's algorithm on the weights of profile, which must have been computed by
+     * {@link Graph#computeProfile(Profile)}. Landmarks are only used for the default profile, since
+     * their bounds hold for the weights of the file only.
+     *
+     * @throws IllegalArgumentException if the weights of profile were not computed
+     */
+    @Override
+    public int getShortestPath(int start, int target, Profile profile) {
+        if (profile == Profile.DEFAULT) {
+            return getShortestPath(start, target);
+        }
+        weights = graph.weights(profile);
+        try {
+            var event = new SearchEvent();
+            event.begin();
+            long startNanos = System.nanoTime();
+            int distance = dijkstra(graph.internal(start), graph.internal(target));
+            DIJKSTRA_METRICS.record(
+                    event, startNanos, start, target, settledNodes, relaxedEdges, settledNodes + queueUpdates);
+            return distance;
+        } finally {
+            weights = graph.edgeWeights;
         }
-
-        return -1;
     }
 
     /**
-     * Simple minHeap implementation sorting by distance to startnode. Supports add, poll and
-     * decreaseKey operation.
+     * Like {@link #getShortestPath(Snap, Snap)} on the weights of profile, which also split the
+     * edges of the points.
+     *
+     * @throws IllegalArgumentException if the weights of profile were not computed
      */
-    private class PriorityQueue {
+    @Override
+    public int getShortestPath(Snap start, Snap target, Profile profile) {
+        if (profile == Profile.DEFAULT) {
+            return getShortestPath(start, target);
+        }
+        weights = graph.weights(profile);
+        try {
+            return getShortestPath(graph.reweigh(start, weights), graph.reweigh(target, weights));
+        } finally {
+            weights = graph.edgeWeights;
+        }
+    }
+
+    private int dijkstra(int start, int target) {
+        if (rejectUnreachable(graph.isUnreachable(start, target))) {
+            return -1;
+        }
+        this.target = target;
+        int[] distances = state.distances;
+        NodeQueue queue = state.queue;
 
-        private final int[] heap;
-        private int size;
-        private final int[] indices;
+        state.reset();
+        state.update(start, 0, start);
+
+        settledNodes = 0;
+        relaxedEdges = 0;
+        queueUpdates = 1;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            checkDeadline(++settledNodes);
 
-        public PriorityQueue(int initialCapacity) {
-            if (initialCapacity <= 0) {
-                throw new IllegalArgumentException("Initial capacity must be greater than 0");
+            if (current == target) {
+                return distances[current];
             }
-            this.heap = new int[initialCapacity];
-            this.indices = new int[initialCapacity];
-            Arrays.fill(indices, -1);
-            this.size = 0;
+
+            relax(current);
         }
 
-        public void add(int value) {
-            heap[size] = value;
-            indices[value] = size;
-            size++;
-            bubbleUp(size - 1);
+        return -1;
+    }
+
+    /**
+     * Dijkstra's algorithm from both nodes of the edge of start, which stops once no queued node
+     * can lead to a shorter path into the edge of target than found. Landmarks are not used, since
+     * their bounds lead to single nodes.
+     */
+    @Override
+    public int getShortestPath(Snap start, Snap target) {
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        int distance = dijkstra(start, target);
+        DIJKSTRA_METRICS.record(
+                event,
+                startNanos,
+                start.source(),
+                target.source(),
+                settledNodes,
+                relaxedEdges,
+                settledNodes + queueUpdates);
+        return distance;
+    }
+
+    private int dijkstra(Snap start, Snap target) {
+        if (rejectUnreachable(graph.isUnreachable(start, target))) {
+            return -1;
         }
+        int[] distances = state.distances;
+        NodeQueue queue = state.queue;
+
+        state.reset();
+        settledNodes = 0;
+        relaxedEdges = 0;
+        queueUpdates = 0;
+        seed(graph.internal(start.source()), start.toSource());
+        seed(graph.internal(start.target()), start.toTarget());
+        int targetSource = graph.internal(target.source());
+        int targetTarget = graph.internal(target.target());
+        int fromSource = target.fromSource();
+        int fromTarget = target.fromTarget();
+
+        int along = start.along(target);
+        long best = along == -1 ? SearchState.INFINITY : along;
+        this.target = -1;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (distances[current] >= best) {
+                break;
+            }
+            checkDeadline(++settledNodes);
 
-        public void decreaseKey(int value) {
-            int idx = indices[value];
-            if (idx == -1) {
-                add(value);
-                return;
+            if (current == targetSource && fromSource != -1 && distances[current] + (long) fromSource < best) {
+                best = distances[current] + (long) fromSource;
+                this.target = current;
             }
-            bubbleDown(idx);
-            bubbleUp(idx);
+            if (current == targetTarget && fromTarget != -1 && distances[current] + (long) fromTarget < best) {
+                best = distances[current] + (long) fromTarget;
+                this.target = current;
+            }
+
+            relax(current);
         }
 
-        public int poll() {
-            int result = heap[0];
+        return best >= SearchState.INFINITY ? -1 : (int) best;
+    }
 
-            heap[0] = heap[size - 1];
-            indices[result] = -1;
-            size--;
-            bubbleDown(0);
+    /**
+     * Answers a query without searching if its target is known to be unreachable by the
+     * components of the graph.
+     *
+     * @return unreachable
+     */
+    private boolean rejectUnreachable(boolean unreachable) {
+        if (unreachable) {
+            Components.REJECTED_QUERIES.increment();
+            target = -1;
+            settledNodes = 0;
+            relaxedEdges = 0;
+            queueUpdates = 0;
+        }
+        return unreachable;
+    }
 
-            return result;
+    /**
+     * Starts the search at the internal node with the given distance, unless it is -1.
+     */
+    private void seed(int node, int distance) {
+        if (distance != -1 && distance < state.distances[node]) {
+            state.update(node, distance, node);
+            queueUpdates++;
         }
+    }
+
+    /**
+     * A* search ordered by distance plus the lower bound of the landmarks to the target. The
+     * bounds are consistent, so a node is final once it is settled like in Dijkstra's algorithm.
+     * The bound of a node is only computed when it is reached first and kept as the difference of
+     * its estimate and distance afterwards.
+     */
+    public int getShortestPath(int start, int target, Landmarks landmarks) {
+        var event = new SearchEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        int distance = aStar(graph.internal(start), graph.internal(target), landmarks);
+        A_STAR_METRICS.record(
+                event, startNanos, start, target, settledNodes, relaxedEdges, settledNodes + queueUpdates);
+        return distance;
+    }
 
-        public boolean isEmpty() {
-            return size == 0;
+    private int aStar(int start, int target, Landmarks landmarks) {
+        if (rejectUnreachable(graph.isUnreachable(start, target))) {
+            return -1;
         }
+        this.target = target;
+        int[] distances = state.distances;
+        NodeQueue queue = state.estimateQueue();
+        int[] estimates = state.estimates;
 
-        private void bubbleUp(int index) {
-            while (index > 0) {
-                int parentIndex = (index - 1) / 2;
-                if (Integer.compare(distances[heap[index]], distances[heap[parentIndex]]) >= 0) {
-                    break;
-                }
-                swap(index, parentIndex);
-                index = parentIndex;
-            }
+        if (targetFrom.length != landmarks.getCount()) {
+            targetFrom = new int[landmarks.getCount()];
+            targetTo = new int[landmarks.getCount()];
         }
+        landmarks.loadTarget(target, targetFrom, targetTo);
+
+        state.reset();
+        settledNodes = 0;
+        relaxedEdges = 0;
+        queueUpdates = 1;
+        int startBound = landmarks.lowerBound(start, targetFrom, targetTo);
+        if (startBound == SearchState.INFINITY) {
+            return -1;
+        }
+        state.update(start, 0, start, startBound);
 
-        private void bubbleDown(int index) {
-            while (true) {
-                int leftChild = 2 * index + 1;
-                int rightChild = 2 * index + 2;
-                int smallest = index;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            checkDeadline(++settledNodes);
 
-                if (leftChild < size && Integer.compare(distances[heap[leftChild]], distances[heap[smallest]]) < 0) {
-                    smallest = leftChild;
-                }
+            if (current == target) {
+                return distances[current];
+            }
 
-                if (rightChild < size && Integer.compare(distances[heap[rightChild]], distances[heap[smallest]]) < 0) {
-                    smallest = rightChild;
+            int firstEdgeIdx = graph.offsetArray[current];
+            int lastEdgeIdx = graph.offsetArray[current + 1];
+            relaxedEdges += lastEdgeIdx - firstEdgeIdx;
+            for (int i = firstEdgeIdx; i < lastEdgeIdx; i++) {
+                int neighbour = graph.edgeTargets[i];
+                int distance = distances[current] + graph.edgeWeights[i];
+                int oldDistance = distances[neighbour];
+
+                if (distance < oldDistance) {
+                    int bound = oldDistance == SearchState.INFINITY
+                            ? landmarks.lowerBound(neighbour, targetFrom, targetTo)
+                            : estimates[neighbour] - oldDistance;
+                    if (bound != SearchState.INFINITY) {
+                        state.update(neighbour, distance, current, distance + bound);
+                        queueUpdates++;
+                    }
                 }
+            }
+        }
 
-                if (smallest == index) {
-                    break;
-                }
+        return -1;
+    }
 
-                swap(index, smallest);
-                index = smallest;
-            }
+    private void checkDeadline(int settled) {
+        if ((settled & 1023) == 0) {
+            checkDeadline();
         }
+    }
 
-        private void swap(int i, int j) {
-            int temp = heap[i];
-            heap[i] = heap[j];
-            heap[j] = temp;
-            indices[heap[i]] = i;
-            indices[heap[j]] = j;
+    private void checkDeadline() {
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new SearchTimeoutException();
+        }
+    }
+
+    /**
+     * Hands the search arrays back to the graph. The finder must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        if (state != null) {
+            graph.releaseSearchState(state);
+            state = null;
         }
     }
 }
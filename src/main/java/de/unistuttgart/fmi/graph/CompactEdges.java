@@ -0,0 +1,216 @@
+package de.unistuttgart.fmi.graph;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Outgoing edges of all nodes delta-encoded in as few bytes as needed, about a third of the eight
+ * bytes per edge of the compressed sparse row arrays.
+ *
+ * The edges of a node are sorted by target. The first target is stored as its difference to the
+ * node, every further one as its difference to the previous target, each followed by the weight.
+ * A header byte per node gives the number of bytes of its differences and of its weights, from
+ * one to four. After renumbering the nodes by {@link NodeOrder}, most targets are close to their
+ * source, so differences and weights usually take one or two bytes.
+ *
+ * Unlike variable-length integers with a continuation bit per byte, whose length changes from
+ * value to value, every edge of a node has the same length. Decoding reads each value as an
+ * unaligned int and masks it, without a branch per value.
+ */
+final class CompactEdges {
+
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    // ints are read at every value, so the last value needs three more bytes behind it
+    private static final int PADDING = 3;
+
+    // byte offset of the edges of node i in data, numNodes + 1 entries
+    private final int[] offsets;
+    private final byte[] data;
+    private final int numEdges;
+    private final long weightSum;
+
+    private CompactEdges(int[] offsets, byte[] data, int numEdges, long weightSum) {
+        this.offsets = offsets;
+        this.data = data;
+        this.numEdges = numEdges;
+        this.weightSum = weightSum;
+    }
+
+    /**
+     * Encodes the edges of a graph in compressed sparse row form, on all cores.
+     */
+    static CompactEdges encode(int[] offsetArray, int[] edgeTargets, int[] edgeWeights) {
+        int numNodes = offsetArray.length - 1;
+
+        // sort the edges of every node by target and choose the widths of its values
+        long[] sortedEdges = new long[edgeTargets.length];
+        byte[] headers = new byte[numNodes];
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            int first = offsetArray[node];
+            int last = offsetArray[node + 1];
+            for (int i = first; i < last; i++) {
+                sortedEdges[i] = ((long) edgeTargets[i] << 32) | (edgeWeights[i] & 0xffffffffL);
+            }
+            Arrays.sort(sortedEdges, first, last);
+            int targetWidth = 1;
+            int weightWidth = 1;
+            int previous = node;
+            for (int i = first; i < last; i++) {
+                int target = (int) (sortedEdges[i] >>> 32);
+                targetWidth = Math.max(targetWidth, signedWidth(target - previous));
+                weightWidth = Math.max(weightWidth, unsignedWidth((int) sortedEdges[i]));
+                previous = target;
+            }
+            headers[node] = (byte) ((targetWidth - 1) | (weightWidth - 1) << 2);
+        });
+
+        int[] offsets = new int[numNodes + 1];
+        long size = 0;
+        for (int node = 0; node < numNodes; node++) {
+            offsets[node] = (int) size;
+            int degree = offsetArray[node + 1] - offsetArray[node];
+            if (degree > 0) {
+                size += 1 + (long) degree * (targetWidth(headers[node]) + weightWidth(headers[node]));
+            }
+            if (size > Integer.MAX_VALUE - 8 - PADDING) {
+                throw new IllegalStateException("compact edges exceed the maximum array size");
+            }
+        }
+        offsets[numNodes] = (int) size;
+
+        byte[] data = new byte[(int) size + PADDING];
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            int first = offsetArray[node];
+            int last = offsetArray[node + 1];
+            if (first == last) {
+                return;
+            }
+            int position = offsets[node];
+            int targetWidth = targetWidth(headers[node]);
+            int weightWidth = weightWidth(headers[node]);
+            data[position++] = headers[node];
+            int previous = node;
+            for (int i = first; i < last; i++) {
+                int target = (int) (sortedEdges[i] >>> 32);
+                position = write(data, position, target - previous, targetWidth);
+                position = write(data, position, (int) sortedEdges[i], weightWidth);
+                previous = target;
+            }
+        });
+
+        long weightSum = Arrays.stream(edgeWeights).parallel().asLongStream().sum();
+        return new CompactEdges(offsets, data, edgeTargets.length, weightSum);
+    }
+
+    private static int targetWidth(byte header) {
+        return (header & 3) + 1;
+    }
+
+    private static int weightWidth(byte header) {
+        return (header >> 2 & 3) + 1;
+    }
+
+    /**
+     * @return the number of bytes of value in two's complement
+     */
+    private static int signedWidth(int value) {
+        int bits = 33 - Integer.numberOfLeadingZeros(value ^ (value >> 31));
+        return (bits + 7) / 8;
+    }
+
+    /**
+     * @return the number of bytes of value as unsigned integer
+     */
+    private static int unsignedWidth(int value) {
+        int bits = 32 - Integer.numberOfLeadingZeros(value | 1);
+        return (bits + 7) / 8;
+    }
+
+    private static int write(byte[] data, int position, int value, int width) {
+        for (int i = 0; i < width; i++) {
+            data[position++] = (byte) (value >>> 8 * i);
+        }
+        return position;
+    }
+
+    int getNumNodes() {
+        return offsets.length - 1;
+    }
+
+    int getNumEdges() {
+        return numEdges;
+    }
+
+    long getWeightSum() {
+        return weightSum;
+    }
+
+    /**
+     * @return the bytes of the encoded edges without their offsets
+     */
+    long getDataBytes() {
+        return data.length;
+    }
+
+    /**
+     * @return a new cursor over the edges, which must only be used by one thread at a time
+     */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Decodes the outgoing edges of one node after another. After {@link #moveTo(int)}, every
+     * call of {@link #next()} that returns true makes the next edge available from
+     * {@link #target()} and {@link #weight()}.
+     */
+    final class Cursor {
+        private int position;
+        private int end;
+        private int target;
+        private int weight;
+        // shift that sign-extends a difference of the current node, and width of the differences
+        private int targetShift;
+        private int targetWidth;
+        private int weightMask;
+        private int weightWidth;
+
+        private Cursor() {}
+
+        void moveTo(int node) {
+            position = offsets[node];
+            end = offsets[node + 1];
+            target = node;
+            if (position < end) {
+                byte header = data[position++];
+                targetWidth = targetWidth(header);
+                targetShift = 32 - 8 * targetWidth;
+                weightWidth = weightWidth(header);
+                weightMask = -1 >>> (32 - 8 * weightWidth);
+            }
+        }
+
+        boolean next() {
+            if (position >= end) {
+                return false;
+            }
+            int delta = (int) INTS.get(data, position);
+            target += delta << targetShift >> targetShift;
+            position += targetWidth;
+            weight = (int) INTS.get(data, position) & weightMask;
+            position += weightWidth;
+            return true;
+        }
+
+        int target() {
+            return target;
+        }
+
+        int weight() {
+            return weight;
+        }
+    }
+}
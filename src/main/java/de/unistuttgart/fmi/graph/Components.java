@@ -0,0 +1,210 @@
+package de.unistuttgart.fmi.graph;
+
+import de.unistuttgart.fmi.metrics.Metrics;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strongly connected components of a {@link Graph}, to reject queries between nodes that are not
+ * connected in constant time instead of searching everything reachable from the start.
+ *
+ * The components are found by Pearce's variant of Tarjan's algorithm, iteratively with explicit
+ * stacks so that deep road networks do not overflow the call stack, and with a single array of
+ * the size of the graph besides the stacks. Components are numbered in the order they are
+ * completed, which is a reverse topological order: every edge between two components leads to
+ * the one with the smaller number. A target with a larger number than the start is therefore
+ * never reachable.
+ *
+ * Most queries start or end in the largest component. For every component it is also stored
+ * whether it can reach the largest one and whether the largest one reaches it, which answers
+ * these queries exactly.
+ */
+public final class Components {
+
+    private static final byte REACHES_LARGEST = 1;
+    private static final byte REACHED_FROM_LARGEST = 2;
+
+    // queries path finders answered as unreachable without searching
+    static final LongAdder REJECTED_QUERIES = Metrics.counter(
+            "routeplanner_unreachable_rejections_total", "Queries rejected as unreachable by their components", "");
+
+    // component of every internal node id
+    private final int[] components;
+    private final int[] sizes;
+    private final int largest;
+    // REACHES_LARGEST and REACHED_FROM_LARGEST of every component
+    private final byte[] flags;
+
+    private Components(int[] components, int[] sizes, int largest, byte[] flags) {
+        this.components = components;
+        this.sizes = sizes;
+        this.largest = largest;
+        this.flags = flags;
+    }
+
+    /**
+     * Computes the components of the graph given in compressed sparse row form.
+     */
+    static Components compute(int[] offsetArray, int[] edgeTargets) {
+        int numNodes = offsetArray.length - 1;
+        // the order of a node while it is visited, its component counted down from numNodes - 1
+        // once it is assigned, or 0 if it was not visited yet
+        int[] rindex = new int[numNodes];
+        int[] stack = new int[numNodes];
+        int stackSize = 0;
+        int[] callNodes = new int[numNodes];
+        int[] callEdges = new int[numNodes];
+        // whether the node of every call is the root of its component so far
+        boolean[] callRoots = new boolean[numNodes];
+        int index = 1;
+        int component = numNodes - 1;
+
+        for (int root = 0; root < numNodes; root++) {
+            if (rindex[root] != 0) {
+                continue;
+            }
+            rindex[root] = index++;
+            callNodes[0] = root;
+            callEdges[0] = offsetArray[root];
+            callRoots[0] = true;
+            int depth = 1;
+            while (depth > 0) {
+                int node = callNodes[depth - 1];
+                int edge = callEdges[depth - 1];
+                if (edge < offsetArray[node + 1]) {
+                    callEdges[depth - 1]++;
+                    int target = edgeTargets[edge];
+                    if (rindex[target] == 0) {
+                        rindex[target] = index++;
+                        callNodes[depth] = target;
+                        callEdges[depth] = offsetArray[target];
+                        callRoots[depth++] = true;
+                    } else if (rindex[target] < rindex[node]) {
+                        // assigned components are larger than every index, so only nodes
+                        // of the current path and the stack lower the index of node
+                        rindex[node] = rindex[target];
+                        callRoots[depth - 1] = false;
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (callRoots[depth]) {
+                    index--;
+                    while (stackSize > 0 && rindex[node] <= rindex[stack[stackSize - 1]]) {
+                        rindex[stack[--stackSize]] = component;
+                        index--;
+                    }
+                    rindex[node] = component--;
+                } else {
+                    stack[stackSize++] = node;
+                }
+                if (depth > 0 && rindex[node] < rindex[callNodes[depth - 1]]) {
+                    rindex[callNodes[depth - 1]] = rindex[node];
+                    callRoots[depth - 1] = false;
+                }
+            }
+        }
+
+        // number the components from 0 in the order they were completed
+        int count = numNodes - 1 - component;
+        int[] sizes = new int[count];
+        for (int node = 0; node < numNodes; node++) {
+            rindex[node] = numNodes - 1 - rindex[node];
+            sizes[rindex[node]]++;
+        }
+        int largest = 0;
+        for (int i = 1; i < count; i++) {
+            if (sizes[i] > sizes[largest]) {
+                largest = i;
+            }
+        }
+        return new Components(rindex, sizes, largest, reachability(offsetArray, edgeTargets, rindex, sizes, largest));
+    }
+
+    /**
+     * @return REACHES_LARGEST and REACHED_FROM_LARGEST of every component, derived along the
+     *     topological order of the components
+     */
+    private static byte[] reachability(
+            int[] offsetArray, int[] edgeTargets, int[] components, int[] sizes, int largest) {
+        int numNodes = components.length;
+        // the nodes sorted by component
+        int[] starts = new int[sizes.length + 1];
+        for (int i = 0; i < sizes.length; i++) {
+            starts[i + 1] = starts[i] + sizes[i];
+        }
+        int[] positions = starts.clone();
+        int[] nodes = new int[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            nodes[positions[components[node]]++] = node;
+        }
+
+        byte[] flags = new byte[sizes.length];
+        flags[largest] = REACHES_LARGEST | REACHED_FROM_LARGEST;
+        // edges lead to smaller components, which are complete when a larger one is visited
+        for (int component = largest + 1; component < sizes.length; component++) {
+            for (int i = starts[component]; i < starts[component + 1] && flags[component] == 0; i++) {
+                int node = nodes[i];
+                for (int edge = offsetArray[node]; edge < offsetArray[node + 1]; edge++) {
+                    if ((flags[components[edgeTargets[edge]]] & REACHES_LARGEST) != 0) {
+                        flags[component] |= REACHES_LARGEST;
+                        break;
+                    }
+                }
+            }
+        }
+        // and components reached from the largest one pass it on to smaller ones
+        for (int component = largest; component >= 0; component--) {
+            if ((flags[component] & REACHED_FROM_LARGEST) == 0) {
+                continue;
+            }
+            for (int i = starts[component]; i < starts[component + 1]; i++) {
+                int node = nodes[i];
+                for (int edge = offsetArray[node]; edge < offsetArray[node + 1]; edge++) {
+                    flags[components[edgeTargets[edge]]] |= REACHED_FROM_LARGEST;
+                }
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * @return whether target is certainly not reachable from start, given as internal node ids.
+     *     If false, target may still be unreachable if neither node is in the largest component.
+     */
+    boolean isUnreachable(int start, int target) {
+        int startComponent = components[start];
+        int targetComponent = components[target];
+        if (startComponent == targetComponent) {
+            return false;
+        }
+        if (startComponent < targetComponent) {
+            return true;
+        }
+        if (startComponent == largest) {
+            return (flags[targetComponent] & REACHED_FROM_LARGEST) == 0;
+        }
+        if (targetComponent == largest) {
+            return (flags[startComponent] & REACHES_LARGEST) == 0;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the internal node id is in the largest component
+     */
+    boolean isInLargest(int node) {
+        return components[node] == largest;
+    }
+
+    public int getCount() {
+        return sizes.length;
+    }
+
+    /**
+     * @return the number of nodes in the largest component
+     */
+    public int getLargestSize() {
+        return sizes.length == 0 ? 0 : sizes[largest];
+    }
+}
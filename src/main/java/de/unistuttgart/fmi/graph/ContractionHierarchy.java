@@ -0,0 +1,86 @@
+package de.unistuttgart.fmi.graph;
+
+/**
+ * Contraction hierarchy of a {@link Graph}.
+ *
+ * Every node has a rank given by its contraction order. The forward edges of a node lead to
+ * nodes of higher rank, the backward edges come from nodes of higher rank. Both contain original
+ * edges and shortcuts and are stored as (neighbour, weight, middle node) triples in flat arrays
+ * indexed by an offset array; original edges have the middle node -1.
+ */
+public class ContractionHierarchy {
+
+    final Graph graph;
+    final int[] ranks;
+    final int[] forwardOffsets;
+    final int[] forwardEdges;
+    final int[] backwardOffsets;
+    final int[] backwardEdges;
+    private final Pool<CHPathFinder> finders;
+
+    ContractionHierarchy(
+            Graph graph,
+            int[] ranks,
+            int[] forwardOffsets,
+            int[] forwardEdges,
+            int[] backwardOffsets,
+            int[] backwardEdges) {
+        this.graph = graph;
+        this.ranks = ranks;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardEdges = forwardEdges;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardEdges = backwardEdges;
+        this.finders = new Pool<>(() -> new CHPathFinder(this), graph.getConcurrency());
+    }
+
+    public static ContractionHierarchy build(Graph graph) {
+        return new ContractionHierarchyBuilder(graph).build();
+    }
+
+    /**
+     * @return a pooled path finder, which should be closed after use
+     */
+    public CHPathFinder getPathFinder() {
+        CHPathFinder finder = finders.acquire();
+        finder.released = false;
+        return finder;
+    }
+
+    /**
+     * Keeps up to threads idle path finders, see {@link Graph#setConcurrency(int)}.
+     */
+    void setConcurrency(int threads) {
+        finders.setMaxIdle(threads);
+    }
+
+    void release(CHPathFinder finder) {
+        finders.release(finder);
+    }
+
+    public int getNumEdges() {
+        return (forwardEdges.length + backwardEdges.length) / 3;
+    }
+
+    /**
+     * @return the middle node of the lightest hierarchy edge from source to target
+     */
+    int getMiddle(int source, int target) {
+        if (ranks[source] < ranks[target]) {
+            return findMiddle(forwardOffsets, forwardEdges, source, target);
+        }
+        return findMiddle(backwardOffsets, backwardEdges, target, source);
+    }
+
+    private static int findMiddle(int[] offsets, int[] edges, int node, int neighbour) {
+        int middle = -1;
+        int weight = Integer.MAX_VALUE;
+        for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+            if (edges[3 * i] == neighbour && edges[3 * i + 1] < weight) {
+                weight = edges[3 * i + 1];
+                middle = edges[3 * i + 2];
+            }
+        }
+        return middle;
+    }
+}
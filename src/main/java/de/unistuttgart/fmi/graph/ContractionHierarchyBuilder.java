@@ -0,0 +1,289 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+
+/**
+ * Offline preprocessing of a {@link Graph} into a {@link ContractionHierarchy}.
+ *
+ * Nodes are contracted one after another in the order of a lazily updated priority built from
+ * the edge difference, the number of already contracted neighbours and the hierarchy level.
+ * Contracting a node inserts a shortcut between two of its neighbours whenever a bounded local
+ * witness search does not find a path that is at most as long as the path over the node.
+ */
+class ContractionHierarchyBuilder {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final Graph graph;
+    private final int numNodes;
+
+    // edges to not yet contracted neighbours, stored as (neighbour, weight, middle node) triples
+    private final int[][] outEdges;
+    private final int[] outCounts;
+    private final int[][] inEdges;
+    private final int[] inCounts;
+
+    private final int[] contractedNeighbours;
+    private final int[] levels;
+    private final int[] priorities;
+    private final int[] ranks;
+    private final int[] lastUpdates;
+
+    private final int[] witnessDistances;
+    private final int[] witnessTouched;
+    private int witnessTouchedCount;
+    private final int[] witnessTargets;
+    private int witnessRound;
+    private final IndexedHeap witnessQueue;
+
+    ContractionHierarchyBuilder(Graph graph) {
+        this.graph = graph;
+        this.numNodes = graph.getNumNodes();
+        this.outEdges = new int[numNodes][];
+        this.outCounts = new int[numNodes];
+        this.inEdges = new int[numNodes][];
+        this.inCounts = new int[numNodes];
+        this.contractedNeighbours = new int[numNodes];
+        this.levels = new int[numNodes];
+        this.priorities = new int[numNodes];
+        this.ranks = new int[numNodes];
+        this.lastUpdates = new int[numNodes];
+        this.witnessDistances = new int[numNodes];
+        this.witnessTouched = new int[numNodes];
+        this.witnessTargets = new int[numNodes];
+        this.witnessQueue = new IndexedHeap(numNodes, witnessDistances);
+
+        Arrays.fill(witnessDistances, INFINITY);
+
+        for (int node = 0; node < numNodes; node++) {
+            int degree = graph.offsetArray[node + 1] - graph.offsetArray[node];
+            outEdges[node] = new int[3 * Math.max(degree, 1)];
+            inEdges[node] = new int[6];
+        }
+        for (int node = 0; node < numNodes; node++) {
+            for (int i = graph.offsetArray[node]; i < graph.offsetArray[node + 1]; i++) {
+                if (graph.edgeTargets[i] != node) {
+                    addEdge(node, graph.edgeTargets[i], graph.edgeWeights[i], -1);
+                }
+            }
+        }
+    }
+
+    ContractionHierarchy build() {
+        IndexedHeap order = new IndexedHeap(numNodes, priorities);
+        for (int node = 0; node < numNodes; node++) {
+            priorities[node] = computePriority(node);
+            order.add(node);
+        }
+
+        int rank = 0;
+        while (!order.isEmpty()) {
+            int node = order.poll();
+
+            // lazy update: only contract the node if its priority is still the smallest
+            int priority = computePriority(node);
+            if (!order.isEmpty() && priority > priorities[order.peek()]) {
+                priorities[node] = priority;
+                order.add(node);
+                continue;
+            }
+
+            contract(node, false);
+            ranks[node] = rank++;
+            detach(node, order);
+        }
+
+        return buildHierarchy();
+    }
+
+    private int computePriority(int node) {
+        int edgeDifference = contract(node, true) - inCounts[node] - outCounts[node];
+        return 2 * edgeDifference + contractedNeighbours[node] + levels[node];
+    }
+
+    /**
+     * Inserts (or, when simulating, only counts) the shortcuts needed to contract the given node.
+     */
+    private int contract(int node, boolean simulate) {
+        int[] in = inEdges[node];
+        int[] out = outEdges[node];
+        int inCount = inCounts[node];
+        int outCount = outCounts[node];
+
+        int maxOutWeight = 0;
+        witnessRound++;
+        for (int j = 0; j < outCount; j++) {
+            maxOutWeight = Math.max(maxOutWeight, out[3 * j + 1]);
+            witnessTargets[out[3 * j]] = witnessRound;
+        }
+
+        int shortcuts = 0;
+        for (int i = 0; i < inCount; i++) {
+            int source = in[3 * i];
+            int inWeight = in[3 * i + 1];
+
+            int targets = witnessTargets[source] == witnessRound ? outCount - 1 : outCount;
+            if (targets == 0) {
+                continue;
+            }
+            witnessSearch(source, node, inWeight + maxOutWeight, targets);
+
+            for (int j = 0; j < outCount; j++) {
+                int target = out[3 * j];
+                if (target == source) {
+                    continue;
+                }
+                int weight = inWeight + out[3 * j + 1];
+                if (witnessDistances[target] <= weight) {
+                    continue;
+                }
+                shortcuts++;
+                if (!simulate) {
+                    addEdge(source, target, weight, node);
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Dijkstra from source on the remaining graph without the ignored node, which stops once all
+     * targets are settled, the distance limit is exceeded or too many nodes were settled.
+     */
+    private void witnessSearch(int source, int ignore, int maxDistance, int targets) {
+        for (int i = 0; i < witnessTouchedCount; i++) {
+            witnessDistances[witnessTouched[i]] = INFINITY;
+        }
+        witnessTouchedCount = 0;
+        witnessQueue.clear();
+
+        witnessDistances[source] = 0;
+        witnessTouched[witnessTouchedCount++] = source;
+        witnessQueue.add(source);
+
+        int settled = 0;
+        while (!witnessQueue.isEmpty()) {
+            int current = witnessQueue.poll();
+            if (witnessDistances[current] > maxDistance || ++settled > WITNESS_SETTLE_LIMIT) {
+                break;
+            }
+            if (current != source && witnessTargets[current] == witnessRound && --targets == 0) {
+                break;
+            }
+
+            int[] edges = outEdges[current];
+            for (int i = 0; i < outCounts[current]; i++) {
+                int neighbour = edges[3 * i];
+                if (neighbour == ignore) {
+                    continue;
+                }
+                int distance = witnessDistances[current] + edges[3 * i + 1];
+                if (distance < witnessDistances[neighbour]) {
+                    if (witnessDistances[neighbour] == INFINITY) {
+                        witnessTouched[witnessTouchedCount++] = neighbour;
+                    }
+                    witnessDistances[neighbour] = distance;
+                    witnessQueue.update(neighbour);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a contracted node from the adjacency of its neighbours and updates their priorities.
+     * The edges of the node itself stay untouched and form its upward edges in the hierarchy.
+     */
+    private void detach(int node, IndexedHeap order) {
+        int[] out = outEdges[node];
+        for (int i = 0; i < outCounts[node]; i++) {
+            int neighbour = out[3 * i];
+            inCounts[neighbour] = remove(inEdges[neighbour], inCounts[neighbour], node);
+        }
+        int[] in = inEdges[node];
+        for (int i = 0; i < inCounts[node]; i++) {
+            int neighbour = in[3 * i];
+            outCounts[neighbour] = remove(outEdges[neighbour], outCounts[neighbour], node);
+        }
+
+        for (int i = 0; i < outCounts[node]; i++) {
+            updateNeighbour(out[3 * i], node, order);
+        }
+        for (int i = 0; i < inCounts[node]; i++) {
+            updateNeighbour(in[3 * i], node, order);
+        }
+    }
+
+    private void updateNeighbour(int neighbour, int node, IndexedHeap order) {
+        if (!order.contains(neighbour) || lastUpdates[neighbour] == node + 1) {
+            return;
+        }
+        lastUpdates[neighbour] = node + 1;
+        contractedNeighbours[neighbour]++;
+        levels[neighbour] = Math.max(levels[neighbour], levels[node] + 1);
+        priorities[neighbour] = computePriority(neighbour);
+        order.update(neighbour);
+    }
+
+    private static int remove(int[] edges, int count, int neighbour) {
+        for (int i = 0; i < count; i++) {
+            if (edges[3 * i] == neighbour) {
+                count--;
+                edges[3 * i] = edges[3 * count];
+                edges[3 * i + 1] = edges[3 * count + 1];
+                edges[3 * i + 2] = edges[3 * count + 2];
+                return count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds the edge from source to target, or lowers the weight of an existing one.
+     */
+    private void addEdge(int source, int target, int weight, int middle) {
+        outCounts[source] = insert(outEdges, outCounts[source], source, target, weight, middle);
+        inCounts[target] = insert(inEdges, inCounts[target], target, source, weight, middle);
+    }
+
+    private static int insert(int[][] lists, int count, int node, int neighbour, int weight, int middle) {
+        int[] edges = lists[node];
+        for (int i = 0; i < count; i++) {
+            if (edges[3 * i] == neighbour) {
+                if (weight < edges[3 * i + 1]) {
+                    edges[3 * i + 1] = weight;
+                    edges[3 * i + 2] = middle;
+                }
+                return count;
+            }
+        }
+        if (3 * count == edges.length) {
+            edges = Arrays.copyOf(edges, 2 * edges.length);
+            lists[node] = edges;
+        }
+        edges[3 * count] = neighbour;
+        edges[3 * count + 1] = weight;
+        edges[3 * count + 2] = middle;
+        return count + 1;
+    }
+
+    private ContractionHierarchy buildHierarchy() {
+        int[] forwardOffsets = new int[numNodes + 1];
+        int[] backwardOffsets = new int[numNodes + 1];
+        for (int node = 0; node < numNodes; node++) {
+            forwardOffsets[node + 1] = forwardOffsets[node] + outCounts[node];
+            backwardOffsets[node + 1] = backwardOffsets[node] + inCounts[node];
+        }
+
+        int[] forwardEdges = new int[3 * forwardOffsets[numNodes]];
+        int[] backwardEdges = new int[3 * backwardOffsets[numNodes]];
+        for (int node = 0; node < numNodes; node++) {
+            System.arraycopy(outEdges[node], 0, forwardEdges, 3 * forwardOffsets[node], 3 * outCounts[node]);
+            System.arraycopy(inEdges[node], 0, backwardEdges, 3 * backwardOffsets[node], 3 * inCounts[node]);
+            outEdges[node] = null;
+            inEdges[node] = null;
+        }
+
+        return new ContractionHierarchy(graph, ranks, forwardOffsets, forwardEdges, backwardOffsets, backwardEdges);
+    }
+}
@@ -0,0 +1,186 @@
+package de.unistuttgart.fmi.graph;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel one-to-all search by Δ-stepping: the nodes are kept in buckets of width Δ by their
+ * tentative distance, and the nodes of the first non-empty bucket are relaxed in parallel in
+ * phases until no relaxation leads back into that bucket. Distances are lowered with
+ * compare-and-set, so an edge may be relaxed by several threads at once.
+ *
+ * The distances are written into a {@link SearchState}, whose predecessors are left untouched.
+ */
+class DeltaStepping {
+
+    private static final int INFINITY = SearchState.INFINITY;
+    private static final VarHandle DISTANCES = MethodHandles.arrayElementVarHandle(int[].class);
+    /** frontier nodes relaxed by one task */
+    private static final int CHUNK_SIZE = 512;
+
+    private final Graph graph;
+    private final SearchState state;
+    private final int delta;
+
+    DeltaStepping(Graph graph, SearchState state, int delta) {
+        this.graph = graph;
+        this.state = state;
+        this.delta = delta;
+    }
+
+    /**
+     * Searches from the internal node start, leaving nodes farther than limit unreached. The
+     * deadline check runs once per phase.
+     *
+     * @return the number of node relaxations, counting nodes relaxed in several phases repeatedly
+     */
+    int run(int start, int limit, Runnable checkDeadline) {
+        int[] distances = state.distances;
+        int[] marks = state.marks();
+        state.reset();
+        state.touch(start);
+        distances[start] = 0;
+
+        var buckets = new TreeMap<Integer, IntList>();
+        buckets.put(0, IntList.of(start));
+        int relaxed = 0;
+        while (!buckets.isEmpty()) {
+            var entry = buckets.pollFirstEntry();
+            int bucket = entry.getKey();
+
+            // skip nodes that moved to an earlier bucket since or are listed twice
+            int mark = state.nextMark();
+            IntList frontier = new IntList();
+            for (int i = 0; i < entry.getValue().size; i++) {
+                int node = entry.getValue().values[i];
+                if (distances[node] / delta == bucket && marks[node] != mark) {
+                    marks[node] = mark;
+                    frontier.add(node);
+                }
+            }
+
+            while (frontier.size > 0) {
+                checkDeadline.run();
+                relaxed += frontier.size;
+                IntList[] updates = relax(frontier, limit);
+
+                mark = state.nextMark();
+                IntList next = new IntList();
+                for (IntList chunk : updates) {
+                    for (int i = 0; i < chunk.size; i++) {
+                        int node = chunk.values[i];
+                        if (node < 0) {
+                            node = ~node;
+                            state.touch(node);
+                        }
+                        if (marks[node] == mark) {
+                            continue;
+                        }
+                        marks[node] = mark;
+                        int nodeBucket = distances[node] / delta;
+                        if (nodeBucket == bucket) {
+                            next.add(node);
+                        } else {
+                            buckets.computeIfAbsent(nodeBucket, b -> new IntList())
+                                    .add(node);
+                        }
+                    }
+                }
+                frontier = next;
+            }
+        }
+        return relaxed;
+    }
+
+    /**
+     * Relaxes all edges of the frontier nodes, in parallel for large frontiers.
+     *
+     * @return the nodes whose distance was lowered per chunk of the frontier, as ~node if they
+     *     were reached for the first time
+     */
+    private IntList[] relax(IntList frontier, int limit) {
+        int numChunks = (frontier.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntList[] updates = new IntList[numChunks];
+        if (numChunks == 1) {
+            updates[0] = relaxChunk(frontier, 0, limit);
+        } else {
+            IntStream.range(0, numChunks)
+                    .parallel()
+                    .forEach(chunk -> updates[chunk] = relaxChunk(frontier, chunk * CHUNK_SIZE, limit));
+        }
+        return updates;
+    }
+
+    private IntList relaxChunk(IntList frontier, int from, int limit) {
+        int[] distances = state.distances;
+        int[] offsets = graph.offsetArray;
+        int[] edgeTargets = graph.edgeTargets;
+        int[] edgeWeights = graph.edgeWeights;
+        IntList updated = new IntList();
+        int to = Math.min(frontier.size, from + CHUNK_SIZE);
+        if (graph.compactEdges != null) {
+            var cursor = graph.compactEdges.cursor();
+            for (int f = from; f < to; f++) {
+                int node = frontier.values[f];
+                int distance = (int) DISTANCES.getVolatile(distances, node);
+                cursor.moveTo(node);
+                while (cursor.next()) {
+                    lower(cursor.target(), distance + cursor.weight(), limit, updated);
+                }
+            }
+            return updated;
+        }
+        for (int f = from; f < to; f++) {
+            int node = frontier.values[f];
+            int distance = (int) DISTANCES.getVolatile(distances, node);
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                lower(edgeTargets[i], distance + edgeWeights[i], limit, updated);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Lowers the distance of neighbour to newDistance unless it is larger than limit, and adds
+     * neighbour to updated if it was lowered.
+     */
+    private void lower(int neighbour, int newDistance, int limit, IntList updated) {
+        if (newDistance > limit) {
+            return;
+        }
+        int[] distances = state.distances;
+        int old = (int) DISTANCES.getVolatile(distances, neighbour);
+        while (newDistance < old) {
+            int witness = (int) DISTANCES.compareAndExchange(distances, neighbour, old, newDistance);
+            if (witness == old) {
+                updated.add(old == INFINITY ? ~neighbour : neighbour);
+                return;
+            }
+            old = witness;
+        }
+    }
+
+    /**
+     * Growable list of node ids.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        static IntList of(int value) {
+            IntList list = new IntList();
+            list.add(value);
+            return list;
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many shortest path distances between a list of sources and a list of targets, computed
+ * with all cores.
+ *
+ * On a contracted graph, every target runs one backward upward search whose reached nodes are
+ * stored in buckets, and every source runs one forward upward search that combines its distances
+ * with the bucket entries of the nodes it reaches. Without a hierarchy, every source runs Dijkstra
+ * until all targets are settled.
+ */
+public class DistanceMatrix {
+
+    private static final int INFINITY = SearchState.INFINITY;
+
+    private final Graph graph;
+    private final int[] sources;
+    private final int[] targets;
+    private long deadline;
+    private boolean hasDeadline;
+
+    DistanceMatrix(Graph graph, int[] sources, int[] targets) {
+        this.graph = graph;
+        this.sources = sources;
+        this.targets = targets;
+    }
+
+    /**
+     * Makes {@link #compute()} throw a {@link SearchTimeoutException} once
+     * {@link System#nanoTime()} passes the given deadline.
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadline = deadlineNanos;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * @return the distances from every source (rows) to every target (columns), -1 if a target is
+     *     unreachable
+     */
+    public int[][] compute() {
+        int[] internalSources = toInternal(sources);
+        int[] internalTargets = toInternal(targets);
+        var hierarchy = graph.getHierarchy();
+        int[][] matrix = hierarchy != null
+                ? computeWithBuckets(hierarchy, internalSources, internalTargets)
+                : computeWithDijkstra(internalSources, internalTargets);
+
+        for (int[] row : matrix) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] == INFINITY) {
+                    row[j] = -1;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private int[] toInternal(int[] nodes) {
+        int[] internal = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            internal[i] = graph.internal(nodes[i]);
+        }
+        return internal;
+    }
+
+    private int[][] computeWithDijkstra(int[] sources, int[] targets) {
+        int[] sortedTargets = Arrays.stream(targets).sorted().distinct().toArray();
+        int[][] matrix = new int[sources.length][];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            try (var finder = graph.getClosestPathFinder()) {
+                if (hasDeadline) {
+                    finder.setDeadline(deadline);
+                }
+                finder.searchTargets(sources[i], sortedTargets);
+                int[] row = new int[targets.length];
+                for (int j = 0; j < targets.length; j++) {
+                    row[j] = finder.distance(targets[j]);
+                }
+                matrix[i] = row;
+            }
+        });
+        return matrix;
+    }
+
+    private int[][] computeWithBuckets(ContractionHierarchy hierarchy, int[] sources, int[] targets) {
+        // backward search spaces of the targets as (node, target index, distance) entries
+        int[][] spaceNodes = new int[targets.length][];
+        int[][] spaceDistances = new int[targets.length][];
+        IntStream.range(0, targets.length).parallel().forEach(j -> {
+            checkDeadline();
+            try (var finder = hierarchy.getPathFinder()) {
+                var search = finder.searchUpward(false, targets[j]);
+                int count = search.getTouchedCount();
+                spaceNodes[j] = new int[count];
+                spaceDistances[j] = new int[count];
+                for (int i = 0; i < count; i++) {
+                    int node = search.getTouched(i);
+                    spaceNodes[j][i] = node;
+                    spaceDistances[j][i] = search.getDistance(node);
+                }
+            }
+        });
+
+        // buckets sorted by node, so a node's entries are found by binary search
+        int numEntries =
+                Arrays.stream(spaceNodes).mapToInt(nodes -> nodes.length).sum();
+        long[] order = new long[numEntries];
+        int[] entryTargets = new int[numEntries];
+        int[] entryDistances = new int[numEntries];
+        int entry = 0;
+        for (int j = 0; j < targets.length; j++) {
+            for (int i = 0; i < spaceNodes[j].length; i++, entry++) {
+                order[entry] = ((long) spaceNodes[j][i] << 32) | entry;
+                entryTargets[entry] = j;
+                entryDistances[entry] = spaceDistances[j][i];
+            }
+        }
+        Arrays.parallelSort(order);
+        int[] bucketNodes = new int[numEntries];
+        int[] bucketTargets = new int[numEntries];
+        int[] bucketDistances = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            int index = (int) order[i];
+            bucketNodes[i] = (int) (order[i] >>> 32);
+            bucketTargets[i] = entryTargets[index];
+            bucketDistances[i] = entryDistances[index];
+        }
+
+        int[][] matrix = new int[sources.length][];
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            checkDeadline();
+            int[] row = new int[targets.length];
+            Arrays.fill(row, INFINITY);
+            try (var finder = hierarchy.getPathFinder()) {
+                var search = finder.searchUpward(true, sources[i]);
+                for (int t = 0; t < search.getTouchedCount(); t++) {
+                    int node = search.getTouched(t);
+                    int distance = search.getDistance(node);
+                    int first = firstEntry(bucketNodes, node);
+                    for (int b = first; b < numEntries && bucketNodes[b] == node; b++) {
+                        int total = distance + bucketDistances[b];
+                        if (total < row[bucketTargets[b]]) {
+                            row[bucketTargets[b]] = total;
+                        }
+                    }
+                }
+            }
+            matrix[i] = row;
+        });
+        return matrix;
+    }
+
+    /**
+     * @return the index of the first entry of node in the sorted bucket nodes
+     */
+    private static int firstEntry(int[] bucketNodes, int node) {
+        int low = 0;
+        int high = bucketNodes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (bucketNodes[middle] < node) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void checkDeadline() {
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            throw new SearchTimeoutException();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package de.unistuttgart.fmi.graph;
+
+import de.unistuttgart.fmi.metrics.SnapEvent;
+import de.unistuttgart.fmi.metrics.SnapMetrics;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Spatial index of the edges of a {@link Graph} as straight segments between their nodes, to find
+ * the road nearest to a coordinate even if both of its nodes are far away.
+ *
+ * The index is a packed R-tree: the segments are sorted along a Hilbert curve through their
+ * midpoints, every 16 consecutive segments get a bounding box, and every 16 consecutive boxes a
+ * box on the next level up to a single root. Opposite edges share one segment. The boxes and node
+ * ids are stored in flat arrays, while the coordinates are read from the graph, so an index can be
+ * shared by graphs with the same nodes and edges but other weights.
+ *
+ * Queries visit boxes and segments best-first by their distance in the same equirectangular
+ * projection around the query point as {@link KDTree}, so they report segments in the order of
+ * their distance and stop after the requested number.
+ */
+final class EdgeIndex {
+
+    private static final int NODE_SIZE = 16;
+    private static final SnapMetrics METRICS = new SnapMetrics("edge");
+
+    // the nodes of the segments in Hilbert order
+    private final int[] sources;
+    private final int[] targets;
+    // minimum latitude, minimum longitude, maximum latitude and maximum longitude of every box,
+    // the leaves first and the root last
+    private final double[] boxes;
+    // index of the first box of every level, the leaves at level 0, plus the number of boxes
+    private final int[] levelStarts;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private EdgeIndex(int[] sources, int[] targets, double[] boxes, int[] levelStarts) {
+        this.sources = sources;
+        this.targets = targets;
+        this.boxes = boxes;
+        this.levelStarts = levelStarts;
+    }
+
+    /**
+     * Indexes the edges given in compressed sparse row form with the coordinates of graph. An
+     * edge is left out if it is a loop or the opposite edge is indexed already.
+     */
+    static EdgeIndex build(Graph graph, int[] offsetArray, int[] edgeTargets) {
+        int numNodes = offsetArray.length - 1;
+
+        int[] counts = new int[numNodes + 1];
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            for (int i = offsetArray[node]; i < offsetArray[node + 1]; i++) {
+                if (isIndexed(offsetArray, edgeTargets, node, i)) {
+                    counts[node + 1]++;
+                }
+            }
+        });
+        Arrays.parallelPrefix(counts, Integer::sum);
+        int numSegments = counts[numNodes];
+        int[] unsortedSources = new int[numSegments];
+        int[] unsortedTargets = new int[numSegments];
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            int position = counts[node];
+            for (int i = offsetArray[node]; i < offsetArray[node + 1]; i++) {
+                if (isIndexed(offsetArray, edgeTargets, node, i)) {
+                    unsortedSources[position] = node;
+                    unsortedTargets[position++] = edgeTargets[i];
+                }
+            }
+        });
+
+        // curve index of the midpoint (32 bits) above the segment (31 bits)
+        double[] bounds = bounds(graph, numNodes);
+        double latScale = 65535 / Math.max(bounds[2] - bounds[0], 1e-9);
+        double lonScale = 65535 / Math.max(bounds[3] - bounds[1], 1e-9);
+        long[] keys = new long[numSegments];
+        IntStream.range(0, numSegments).parallel().forEach(segment -> {
+            int source = unsortedSources[segment];
+            int target = unsortedTargets[segment];
+            double lat = (graph.latitude(source) + graph.latitude(target)) / 2;
+            double lon = (graph.longitude(source) + graph.longitude(target)) / 2;
+            int x = (int) ((lon - bounds[1]) * lonScale);
+            int y = (int) ((lat - bounds[0]) * latScale);
+            keys[segment] = (NodeOrder.hilbertIndex(x, y) << 31) | segment;
+        });
+        Arrays.parallelSort(keys);
+        int[] sources = new int[numSegments];
+        int[] targets = new int[numSegments];
+        Arrays.parallelSetAll(sources, i -> unsortedSources[(int) (keys[i] & Integer.MAX_VALUE)]);
+        Arrays.parallelSetAll(targets, i -> unsortedTargets[(int) (keys[i] & Integer.MAX_VALUE)]);
+
+        // the levels from the leaves up to a single root
+        int[] levelStarts = {0};
+        int levelSize = Math.max(1, (numSegments + NODE_SIZE - 1) / NODE_SIZE);
+        int numBoxes = levelSize;
+        while (levelSize > 1) {
+            levelStarts = Arrays.copyOf(levelStarts, levelStarts.length + 1);
+            levelStarts[levelStarts.length - 1] = numBoxes;
+            levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+            numBoxes += levelSize;
+        }
+        levelStarts = Arrays.copyOf(levelStarts, levelStarts.length + 1);
+        levelStarts[levelStarts.length - 1] = numBoxes;
+
+        double[] boxes = new double[4 * numBoxes];
+        IntStream.range(0, levelStarts[1]).parallel().forEach(box -> {
+            int first = box * NODE_SIZE;
+            int last = Math.min(first + NODE_SIZE, numSegments);
+            empty(boxes, box);
+            for (int segment = first; segment < last; segment++) {
+                include(boxes, box, graph.latitude(sources[segment]), graph.longitude(sources[segment]));
+                include(boxes, box, graph.latitude(targets[segment]), graph.longitude(targets[segment]));
+            }
+        });
+        for (int level = 1; level < levelStarts.length - 1; level++) {
+            int childStart = levelStarts[level - 1];
+            int childEnd = levelStarts[level];
+            for (int box = levelStarts[level]; box < levelStarts[level + 1]; box++) {
+                int first = childStart + (box - levelStarts[level]) * NODE_SIZE;
+                int last = Math.min(first + NODE_SIZE, childEnd);
+                empty(boxes, box);
+                for (int child = first; child < last; child++) {
+                    include(boxes, box, boxes[4 * child], boxes[4 * child + 1]);
+                    include(boxes, box, boxes[4 * child + 2], boxes[4 * child + 3]);
+                }
+            }
+        }
+        return new EdgeIndex(sources, targets, boxes, levelStarts);
+    }
+
+    /**
+     * @return whether edge i from source gets a segment: if it is no loop, the first of parallel
+     *     edges and, of both directions, the one from the smaller node id
+     */
+    private static boolean isIndexed(int[] offsetArray, int[] edgeTargets, int source, int i) {
+        int target = edgeTargets[i];
+        if (source == target) {
+            return false;
+        }
+        for (int j = offsetArray[source]; j < i; j++) {
+            if (edgeTargets[j] == target) {
+                return false;
+            }
+        }
+        if (source < target) {
+            return true;
+        }
+        for (int j = offsetArray[target]; j < offsetArray[target + 1]; j++) {
+            if (edgeTargets[j] == source) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return minimum latitude, minimum longitude, maximum latitude and maximum longitude of all
+     *     nodes
+     */
+    private static double[] bounds(Graph graph, int numNodes) {
+        double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int node = 0; node < numNodes; node++) {
+            include(bounds, 0, graph.latitude(node), graph.longitude(node));
+        }
+        return bounds;
+    }
+
+    private static void empty(double[] boxes, int box) {
+        boxes[4 * box] = Double.MAX_VALUE;
+        boxes[4 * box + 1] = Double.MAX_VALUE;
+        boxes[4 * box + 2] = -Double.MAX_VALUE;
+        boxes[4 * box + 3] = -Double.MAX_VALUE;
+    }
+
+    private static void include(double[] boxes, int box, double lat, double lon) {
+        boxes[4 * box] = Math.min(boxes[4 * box], lat);
+        boxes[4 * box + 1] = Math.min(boxes[4 * box + 1], lon);
+        boxes[4 * box + 2] = Math.max(boxes[4 * box + 2], lat);
+        boxes[4 * box + 3] = Math.max(boxes[4 * box + 3], lon);
+    }
+
+    int getNumSegments() {
+        return sources.length;
+    }
+
+    /**
+     * @return the bytes of the segments and boxes
+     */
+    long getBytes() {
+        return 4L * (sources.length + targets.length) + 8L * boxes.length;
+    }
+
+    int source(int segment) {
+        return sources[segment];
+    }
+
+    int target(int segment) {
+        return targets[segment];
+    }
+
+    /**
+     * Finds the count segments nearest to the given coordinates, with the coordinates of graph,
+     * skipping segments whose edges are all closed in graph, and if largestComponent, segments
+     * that are not in its largest strongly connected component.
+     * The i-th nearest is written to segments[i], and the position of its point nearest to the
+     * coordinates to fractions[i], from 0 at its source to 1 at its target.
+     *
+     * @return the number of segments found, less than count only if the graph has fewer open ones
+     */
+    int nearest(
+            Graph graph,
+            double lat,
+            double lon,
+            int count,
+            boolean largestComponent,
+            int[] segments,
+            double[] fractions) {
+        var event = new SnapEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        Scratch s = scratch.get();
+        double cosLat = Math.cos(Math.toRadians(lat));
+        int found = 0;
+        int visited = 0;
+        int root = levelStarts[levelStarts.length - 1] - 1;
+        s.size = 0;
+        if (sources.length > 0) {
+            s.push(encodeBox(levelStarts.length - 2, root), 0, 0);
+        }
+        while (s.size > 0 && found < count) {
+            long item = s.items[0];
+            double fraction = s.fractions[0];
+            s.pop();
+            visited++;
+            if (item < 0) {
+                // a segment, nearer than everything still queued
+                int segment = (int) ~item;
+                if ((graph.edgeWeight(sources[segment], targets[segment]) != -1
+                                || graph.edgeWeight(targets[segment], sources[segment]) != -1)
+                        && (!largestComponent
+                                || graph.isInLargestComponent(sources[segment])
+                                        && graph.isInLargestComponent(targets[segment]))) {
+                    segments[found] = segment;
+                    fractions[found++] = fraction;
+                }
+                continue;
+            }
+
+            int level = (int) (item >>> 32);
+            int box = (int) item;
+            int first = (box - levelStarts[level]) * NODE_SIZE;
+            if (level == 0) {
+                for (int segment = first; segment < Math.min(first + NODE_SIZE, sources.length); segment++) {
+                    project(graph, lat, lon, cosLat, segment, s);
+                    s.push(~segment, s.projectedDistance, s.projectedFraction);
+                }
+            } else {
+                int childStart = levelStarts[level - 1];
+                for (int child = childStart + first;
+                        child < Math.min(childStart + first + NODE_SIZE, levelStarts[level]);
+                        child++) {
+                    s.push(encodeBox(level - 1, child), boxDistance(lat, lon, cosLat, child), 0);
+                }
+            }
+        }
+        METRICS.record(event, startNanos, lat, lon, visited);
+        return found;
+    }
+
+    private static long encodeBox(int level, int box) {
+        return ((long) level << 32) | box;
+    }
+
+    /**
+     * @return the squared projected distance of the coordinates to the nearest point of a box
+     */
+    private double boxDistance(double lat, double lon, double cosLat, int box) {
+        double dLat = Math.max(0, Math.max(boxes[4 * box] - lat, lat - boxes[4 * box + 2]));
+        double dLon = Math.max(0, Math.max(boxes[4 * box + 1] - lon, lon - boxes[4 * box + 3])) * cosLat;
+        return dLat * dLat + dLon * dLon;
+    }
+
+    /**
+     * Projects the coordinates onto a segment and stores the squared projected distance and the
+     * position of the nearest point in s.
+     */
+    private void project(Graph graph, double lat, double lon, double cosLat, int segment, Scratch s) {
+        int source = sources[segment];
+        int target = targets[segment];
+        double sourceY = graph.latitude(source) - lat;
+        double sourceX = (graph.longitude(source) - lon) * cosLat;
+        double dY = graph.latitude(target) - lat - sourceY;
+        double dX = (graph.longitude(target) - lon) * cosLat - sourceX;
+        double lengthSquared = dX * dX + dY * dY;
+        double fraction = lengthSquared == 0 ? 0 : Math.clamp(-(sourceX * dX + sourceY * dY) / lengthSquared, 0, 1);
+        double x = sourceX + fraction * dX;
+        double y = sourceY + fraction * dY;
+        s.projectedDistance = x * x + y * y;
+        s.projectedFraction = fraction;
+    }
+
+    /**
+     * Per thread min-heap of boxes and segments by their distance, so queries do not allocate.
+     * Boxes are stored as their level and index, segments as their complement.
+     */
+    private static class Scratch {
+        long[] items = new long[64];
+        double[] distances = new double[64];
+        double[] fractions = new double[64];
+        int size;
+        // result of the last projection
+        double projectedDistance;
+        double projectedFraction;
+
+        void push(long item, double distance, double fraction) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+                distances = Arrays.copyOf(distances, 2 * size);
+                fractions = Arrays.copyOf(fractions, 2 * size);
+            }
+            int index = size++;
+            while (index > 0 && distances[(index - 1) / 2] > distance) {
+                int parent = (index - 1) / 2;
+                set(index, items[parent], distances[parent], fractions[parent]);
+                index = parent;
+            }
+            set(index, item, distance, fraction);
+        }
+
+        void pop() {
+            size--;
+            long item = items[size];
+            double distance = distances[size];
+            double fraction = fractions[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distances[child + 1] < distances[child]) {
+                    child++;
+                }
+                if (distances[child] >= distance) {
+                    break;
+                }
+                set(index, items[child], distances[child], fractions[child]);
+                index = child;
+            }
+            set(index, item, distance, fraction);
+        }
+
+        private void set(int index, long item, double distance, double fraction) {
+            items[index] = item;
+            distances[index] = distance;
+            fractions[index] = fraction;
+        }
+    }
+}
@@ -1,31 +1,976 @@
 package de.unistuttgart.fmi.graph;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
 /**
- * Graph represented by an Adjacency-Array
+ * Graph represented by an Adjacency-Array in compressed sparse row form.
+ *
+ * The outgoing edges of node i are stored at the indices offsetArray[i] until
+ * offsetArray[i + 1] (exclusive) of edgeTargets and edgeWeights. The coordinates of the nodes
+ * are stored in latitudes and longitudes, indexed by node id.
+ *
+ * The nodes may be renumbered by a {@link NodeOrder}. All arrays use the internal ids then, while
+ * the public methods of the graph and its path finders take and return the ids of the .fmi file.
+ *
+ * A graph returned by {@link #compact()} stores its edges as {@link CompactEdges} and its
+ * coordinates, also those of its KD-tree, as microdegrees instead, and the arrays above are null. It answers queries with
+ * {@link ClosestPathFinder}s only, since bidirectional search, contraction and landmarks need the
+ * reversed graph.
+ *
+ * Weights of other {@link Profile}s are computed by {@link #computeProfile(Profile)} into further
+ * arrays indexed like edgeWeights, from the coordinates and the maxspeed of the edges in
+ * edgeSpeeds.
+ *
+ * A graph is never modified after its preprocessing. Changed edge weights are applied by
+ * {@link #withEdgeWeights(int[], int[], int[])} to a copy, so searches running on this graph keep
+ * seeing consistent weights.
  */
 public class Graph {
 
-    final int[][] adjacencyArray;
-    final double[][] nodes;
+    /** weight of {@link #withEdgeWeights(int[], int[], int[])} that closes an edge */
+    public static final int CLOSED = -1;
+
+    static final double MICRODEGREES = 1_000_000.0;
+
     final int[] offsetArray;
-    private final KDTree tree;
+    final int[] edgeTargets;
+    // targets of the edges as loaded, which differ from edgeTargets where edges are closed
+    private final int[] openTargets;
+    final int[] edgeWeights;
+    // maxspeed of the edges in km/h as unsigned bytes, 0 if unknown, null if not parsed
+    final byte[] edgeSpeeds;
+    // weights of the computed profiles by ordinal, null for the others and the default
+    private final AtomicReferenceArray<int[]> profileWeights;
+    final double[] latitudes;
+    final double[] longitudes;
+    final KDTree tree;
+    // compact representation, null unless created by compact()
+    final CompactEdges compactEdges;
+    private final int[] microLatitudes;
+    private final int[] microLongitudes;
+    // internal id to file id and back, null if the nodes are in file order
+    final int[] toExternal;
+    final int[] toInternal;
+    // threads searching the graph at the same time, the number of search states kept per pool
+    private volatile int concurrency = Runtime.getRuntime().availableProcessors();
+    // search states by their queue type
+    private final EnumMap<QueueType, Pool<SearchState>> searchStates;
+    private volatile ContractionHierarchy hierarchy;
+    private volatile Landmarks landmarks;
+    private Graph reversed;
+    // search states of the reversed graph of a graph with changed weights, shared with the original
+    private EnumMap<QueueType, Pool<SearchState>> reversedSearchStates;
+    // bucket width of Δ-stepping, 0 until first used
+    private int deltaStep;
+    // segments of the edges for snapping, built on first use
+    private volatile EdgeIndex edgeIndex;
+    // strongly connected components of the open edges, null until computed
+    private volatile Components components;
+
+    public Graph(
+            int[] offsetArray,
+            int[] edgeTargets,
+            int[] edgeWeights,
+            double[] latitudes,
+            double[] longitudes,
+            KDTree tree) {
+        this(offsetArray, edgeTargets, edgeWeights, null, latitudes, longitudes, tree, null, null);
+    }
 
-    public Graph(int[][] adjacencyArray, int[] offsetArray, double[][] nodes, KDTree tree) {
-        this.adjacencyArray = adjacencyArray;
-        this.nodes = nodes;
+    Graph(
+            int[] offsetArray,
+            int[] edgeTargets,
+            int[] edgeWeights,
+            byte[] edgeSpeeds,
+            double[] latitudes,
+            double[] longitudes,
+            KDTree tree,
+            int[] toExternal,
+            int[] toInternal) {
+        this(
+                offsetArray,
+                edgeTargets,
+                edgeWeights,
+                edgeSpeeds,
+                latitudes,
+                longitudes,
+                tree,
+                toExternal,
+                toInternal,
+                null);
+    }
+
+    private Graph(
+            int[] offsetArray,
+            int[] edgeTargets,
+            int[] edgeWeights,
+            byte[] edgeSpeeds,
+            double[] latitudes,
+            double[] longitudes,
+            KDTree tree,
+            int[] toExternal,
+            int[] toInternal,
+            EnumMap<QueueType, Pool<SearchState>> searchStates) {
         this.offsetArray = offsetArray;
+        this.edgeTargets = edgeTargets;
+        this.openTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.edgeSpeeds = edgeSpeeds;
+        this.profileWeights = new AtomicReferenceArray<>(Profile.values().length);
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
         this.tree = tree;
+        this.toExternal = toExternal;
+        this.toInternal = toInternal;
+        this.compactEdges = null;
+        this.microLatitudes = null;
+        this.microLongitudes = null;
+        this.searchStates = searchStates != null ? searchStates : createPools(latitudes.length, concurrency);
+    }
+
+    /**
+     * Copy of graph with other edge targets and weights, sharing everything else. Its reversed
+     * graph will share the search states of reversed, the reversed graph of graph if built.
+     */
+    private Graph(Graph graph, int[] edgeTargets, int[] edgeWeights, Landmarks landmarks, Graph reversed) {
+        this.offsetArray = graph.offsetArray;
+        this.edgeTargets = edgeTargets;
+        this.openTargets = graph.openTargets;
+        this.edgeWeights = edgeWeights;
+        this.edgeSpeeds = graph.edgeSpeeds;
+        // the profiles do not depend on the weights, and closed edges are loops in every profile
+        this.profileWeights = graph.profileWeights;
+        this.latitudes = graph.latitudes;
+        this.longitudes = graph.longitudes;
+        this.tree = graph.tree;
+        this.toExternal = graph.toExternal;
+        this.toInternal = graph.toInternal;
+        this.compactEdges = null;
+        this.microLatitudes = null;
+        this.microLongitudes = null;
+        // the search states only depend on the number of nodes
+        this.concurrency = graph.concurrency;
+        this.searchStates = graph.searchStates;
+        this.reversedSearchStates = reversed != null ? reversed.searchStates : graph.reversedSearchStates;
+        this.landmarks = landmarks;
+        this.deltaStep = graph.deltaStep;
+        // closed edges keep their segment, which snapping skips
+        this.edgeIndex = graph.edgeIndex;
+        // closing edges only removes paths, so unreachable nodes stay unreachable
+        this.components = graph.components;
     }
 
+    private Graph(Graph graph, CompactEdges compactEdges, int[] microLatitudes, int[] microLongitudes) {
+        this.offsetArray = null;
+        this.edgeTargets = null;
+        this.openTargets = null;
+        this.edgeWeights = null;
+        this.edgeSpeeds = null;
+        this.profileWeights = new AtomicReferenceArray<>(Profile.values().length);
+        this.latitudes = null;
+        this.longitudes = null;
+        this.tree = graph.tree.compact(microLatitudes, microLongitudes);
+        this.toExternal = graph.toExternal;
+        this.toInternal = graph.toInternal;
+        this.compactEdges = compactEdges;
+        this.microLatitudes = microLatitudes;
+        this.microLongitudes = microLongitudes;
+        this.concurrency = graph.concurrency;
+        this.searchStates = createPools(compactEdges.getNumNodes(), concurrency);
+        this.components = graph.components;
+    }
+
+    private static EnumMap<QueueType, Pool<SearchState>> createPools(int numNodes, int concurrency) {
+        var pools = new EnumMap<QueueType, Pool<SearchState>>(QueueType.class);
+        for (var type : QueueType.values()) {
+            pools.put(type, new Pool<>(() -> new SearchState(numNodes, type), concurrency));
+        }
+        return pools;
+    }
+
+    /**
+     * Reads a graph from either a .fmi text file or a binary snapshot.
+     *
+     * For a text file, a valid snapshot next to it (same name with ".snapshot" appended) is used
+     * instead of parsing. Otherwise the file is parsed, renumbered in the order selected by the
+     * system property routeplanner.order and the snapshot is written for the next start.
+     */
     public static Graph from(String filePath) throws InvalidGraphException {
-        return new GraphParser(filePath).parse();
+        return from(filePath, warning -> {});
+    }
+
+    /**
+     * Reads a graph like {@link #from(String)}, passing the reasons why a snapshot was ignored or
+     * could not be written to warnings.
+     */
+    public static Graph from(String filePath, Consumer<String> warnings) throws InvalidGraphException {
+        Path path = Path.of(filePath);
+        if (GraphSnapshot.isSnapshot(path)) {
+            return GraphSnapshot.read(path, null, null);
+        }
+
+        NodeOrder order = NodeOrder.fromProperty();
+        Path snapshot = GraphSnapshot.snapshotPathFor(path);
+        if (Files.exists(snapshot)) {
+            try {
+                return GraphSnapshot.read(snapshot, path, order);
+            } catch (InvalidGraphException e) {
+                warnings.accept("Ignoring snapshot: " + e.getMessage());
+            }
+        }
+
+        Graph graph = parse(filePath);
+        graph = graph.renumber(order.compute(graph));
+        try {
+            GraphSnapshot.write(graph, order, path, snapshot);
+        } catch (IOException e) {
+            warnings.accept("Could not write snapshot " + snapshot + ": " + e.getMessage());
+        }
+        return graph;
+    }
+
+    /**
+     * Parses a .fmi file with all cores, or with the sequential {@link GraphParser} if the system
+     * property routeplanner.parser is set to "sequential".
+     */
+    static Graph parse(String filePath) throws InvalidGraphException {
+        if ("sequential".equals(System.getProperty("routeplanner.parser"))) {
+            return new GraphParser(filePath).parse();
+        }
+        return new ParallelGraphParser(filePath).parse();
+    }
+
+    /**
+     * @param order the file ids of the nodes in their new order, or null to keep the order
+     * @return a copy of this graph with the nodes renumbered in the given order
+     */
+    Graph renumber(int[] order) {
+        if (order == null) {
+            return this;
+        }
+        int numNodes = getNumNodes();
+        int[] newIds = invert(order);
+
+        double[] newLatitudes = new double[numNodes];
+        double[] newLongitudes = new double[numNodes];
+        int[] newOffsets = new int[numNodes + 1];
+        for (int node = 0; node < numNodes; node++) {
+            int old = order[node];
+            newLatitudes[node] = latitudes[old];
+            newLongitudes[node] = longitudes[old];
+            newOffsets[node + 1] = newOffsets[node] + offsetArray[old + 1] - offsetArray[old];
+        }
+
+        int[] newTargets = new int[getNumEdges()];
+        int[] newWeights = new int[getNumEdges()];
+        byte[] newSpeeds = edgeSpeeds != null ? new byte[getNumEdges()] : null;
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            int old = order[node];
+            int position = newOffsets[node];
+            for (int i = offsetArray[old]; i < offsetArray[old + 1]; i++, position++) {
+                newTargets[position] = newIds[edgeTargets[i]];
+                newWeights[position] = edgeWeights[i];
+                if (newSpeeds != null) {
+                    newSpeeds[position] = edgeSpeeds[i];
+                }
+            }
+        });
+
+        // the tree stays balanced, only the ids of its entries change
+        int[] newTree = tree.getTree().clone();
+        for (int i = 0; i < newTree.length; i++) {
+            if (newTree[i] != -1) {
+                newTree[i] = newIds[newTree[i]];
+            }
+        }
+        var newKDTree = new KDTree(newLatitudes, newLongitudes, newTree);
+
+        // ids of an already renumbered graph are composed with its order
+        int[] external = order.clone();
+        if (toExternal != null) {
+            for (int node = 0; node < numNodes; node++) {
+                external[node] = toExternal[external[node]];
+            }
+        }
+        return new Graph(
+                newOffsets,
+                newTargets,
+                newWeights,
+                newSpeeds,
+                newLatitudes,
+                newLongitudes,
+                newKDTree,
+                external,
+                invert(external));
+    }
+
+    /**
+     * @return a copy of this graph with the edges encoded as {@link CompactEdges} and the
+     *     coordinates rounded to microdegrees, about 0.1m. This graph can be discarded afterwards.
+     */
+    public Graph compact() {
+        if (compactEdges != null) {
+            return this;
+        }
+        var edges = CompactEdges.encode(offsetArray, edgeTargets, edgeWeights);
+        int[] microLatitudes = new int[getNumNodes()];
+        int[] microLongitudes = new int[getNumNodes()];
+        Arrays.parallelSetAll(microLatitudes, node -> (int) Math.round(latitudes[node] * MICRODEGREES));
+        Arrays.parallelSetAll(microLongitudes, node -> (int) Math.round(longitudes[node] * MICRODEGREES));
+        return new Graph(this, edges, microLatitudes, microLongitudes);
+    }
+
+    public boolean isCompact() {
+        return compactEdges != null;
+    }
+
+    /**
+     * @return the bytes of the edge targets and weights
+     */
+    public long getEdgeBytes() {
+        return compactEdges != null ? compactEdges.getDataBytes() : 4L * (edgeTargets.length + edgeWeights.length);
+    }
+
+    /**
+     * @return the bytes of the edge offsets, the coordinates and the KD-tree with its copy of
+     *     them, without the id mappings that both representations share
+     */
+    public long getNodeBytes() {
+        long offsets = 4L * (getNumNodes() + 1);
+        return compactEdges != null
+                ? offsets + 4L * (microLatitudes.length + microLongitudes.length) + tree.getBytes()
+                : offsets + 8L * (latitudes.length + longitudes.length) + tree.getBytes();
+    }
+
+    private void requireUncompressed(String feature) {
+        if (compactEdges != null) {
+            throw new UnsupportedOperationException(feature + " is not supported by a compact graph");
+        }
     }
 
+    static int[] invert(int[] order) {
+        int[] inverse = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            inverse[order[i]] = i;
+        }
+        return inverse;
+    }
+
+    /**
+     * @return the internal id of a node id of the .fmi file
+     */
+    int internal(int node) {
+        return toInternal == null ? node : toInternal[node];
+    }
+
+    /**
+     * @return the .fmi file id of an internal node id
+     */
+    int external(int node) {
+        return toExternal == null ? node : toExternal[node];
+    }
+
+    public int getNumNodes() {
+        return compactEdges != null ? compactEdges.getNumNodes() : latitudes.length;
+    }
+
+    public int getNumEdges() {
+        return compactEdges != null ? compactEdges.getNumEdges() : edgeTargets.length;
+    }
+
+    /**
+     * @return latitude and longitude of the given node
+     */
+    public double[] getCoordinates(int node) {
+        return coordinates(internal(node));
+    }
+
+    double[] coordinates(int node) {
+        return new double[] {latitude(node), longitude(node)};
+    }
+
+    double latitude(int node) {
+        return latitudes != null ? latitudes[node] : microLatitudes[node] / MICRODEGREES;
+    }
+
+    double longitude(int node) {
+        return longitudes != null ? longitudes[node] : microLongitudes[node] / MICRODEGREES;
+    }
+
+    /**
+     * @return latitude and longitude of every given internal node id
+     */
+    List<double[]> coordinates(int[] nodes) {
+        List<double[]> coordinates = new ArrayList<>(nodes.length);
+        for (int node : nodes) {
+            coordinates.add(coordinates(node));
+        }
+        return coordinates;
+    }
+
+    public double getLatitude(int node) {
+        return latitude(internal(node));
+    }
+
+    public double getLongitude(int node) {
+        return longitude(internal(node));
+    }
+
+    /**
+     * @return latitude, longitude and id of the node nearest to the given coordinates
+     */
     public double[] getNearestNeighbour(double[] start) {
-        return this.tree.nearestNeighbor(start);
+        double[] nearest = this.tree.nearestNeighbor(start);
+        nearest[2] = external((int) nearest[2]);
+        return nearest;
+    }
+
+    /**
+     * @return ids of the count nodes nearest to the given coordinates, nearest first, or of all
+     *     nodes if the graph has fewer
+     * @throws IllegalArgumentException if count is less than 1
+     */
+    public int[] getNearestNeighbours(double lat, double lon, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1, got " + count);
+        }
+        return toExternal(tree.nearest(lat, lon, Math.min(count, getNumNodes())));
     }
 
+    /**
+     * @return ids of all nodes within radius kilometers of the given coordinates, nearest first
+     * @throws IllegalArgumentException if radius is negative or not finite
+     */
+    public int[] getNodesWithin(double lat, double lon, double radius) {
+        if (!(radius >= 0) || Double.isInfinite(radius)) {
+            throw new IllegalArgumentException("radius must be a finite distance, got " + radius);
+        }
+        return toExternal(tree.withinRadius(lat, lon, radius));
+    }
+
+    /**
+     * Builds the index of the edges used by {@link #snap(double, double, int)}, unless it exists.
+     *
+     * @return the bytes of the index
+     */
+    public long buildEdgeIndex() {
+        return edgeIndex().getBytes();
+    }
+
+    EdgeIndex edgeIndex() {
+        var index = edgeIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (edgeIndex == null) {
+                int[][] edges = openEdges();
+                edgeIndex = EdgeIndex.build(this, edges[0], edges[1]);
+            }
+            return edgeIndex;
+        }
+    }
+
+    /**
+     * @return the offsets and targets of the edges as loaded, decoded if the graph is compact
+     */
+    private int[][] openEdges() {
+        if (compactEdges == null) {
+            return new int[][] {offsetArray, openTargets};
+        }
+        int[] targets = new int[getNumEdges()];
+        int[] offsets = new int[getNumNodes() + 1];
+        var cursor = compactEdges.cursor();
+        for (int node = 0; node < getNumNodes(); node++) {
+            offsets[node + 1] = offsets[node];
+            cursor.moveTo(node);
+            while (cursor.next()) {
+                targets[offsets[node + 1]++] = cursor.target();
+            }
+        }
+        return new int[][] {offsets, targets};
+    }
+
+    /**
+     * Computes the strongly connected components of the graph, unless they exist. Path finders
+     * then answer queries between nodes that can not reach each other without searching.
+     */
+    public Components computeComponents() {
+        var computed = components;
+        if (computed != null) {
+            return computed;
+        }
+        synchronized (this) {
+            if (components == null) {
+                int[][] edges = openEdges();
+                components = Components.compute(edges[0], edges[1]);
+            }
+            return components;
+        }
+    }
+
+    /**
+     * @return whether the internal node id target is certainly not reachable from start, false
+     *     if the components were not computed
+     */
+    boolean isUnreachable(int start, int target) {
+        var computed = components;
+        return computed != null && computed.isUnreachable(start, target);
+    }
+
+    /**
+     * @return whether the internal node id is in the largest component, true if the components
+     *     were not computed
+     */
+    boolean isInLargestComponent(int node) {
+        var computed = components;
+        return computed == null || computed.isInLargest(node);
+    }
+
+    /**
+     * @return whether the point of target is certainly not reachable from the point of start,
+     *     through any node their edges can be left and entered by
+     */
+    boolean isUnreachable(Snap start, Snap target) {
+        if (components == null || start.along(target) != -1) {
+            return false;
+        }
+        int startSource = internal(start.source());
+        int startTarget = internal(start.target());
+        int targetSource = internal(target.source());
+        int targetTarget = internal(target.target());
+        return (start.toSource() == -1
+                        || (target.fromSource() == -1 || isUnreachable(startSource, targetSource))
+                                && (target.fromTarget() == -1 || isUnreachable(startSource, targetTarget)))
+                && (start.toTarget() == -1
+                        || (target.fromSource() == -1 || isUnreachable(startTarget, targetSource))
+                                && (target.fromTarget() == -1 || isUnreachable(startTarget, targetTarget)));
+    }
+
+    /**
+     * Snaps the given coordinates to the nearest points of the count nearest edges, with opposite
+     * edges counted once. Closed edges are skipped, unless the opposite edge is open.
+     *
+     * @return the snaps, nearest first
+     */
+    public Snap[] snap(double lat, double lon, int count) {
+        return snap(lat, lon, count, false);
+    }
+
+    /**
+     * Like {@link #snap(double, double, int)}, but if largestComponent, only to edges between
+     * nodes of the largest strongly connected component, from which most of the graph can be
+     * reached. Has no effect until {@link #computeComponents()} was called.
+     */
+    public Snap[] snap(double lat, double lon, int count, boolean largestComponent) {
+        var index = edgeIndex();
+        int[] segments = new int[count];
+        double[] fractions = new double[count];
+        int found = index.nearest(this, lat, lon, count, largestComponent, segments, fractions);
+        Snap[] snaps = new Snap[found];
+        for (int i = 0; i < found; i++) {
+            int source = index.source(segments[i]);
+            int target = index.target(segments[i]);
+            double fraction = fractions[i];
+            double pointLat = latitude(source) + fraction * (latitude(target) - latitude(source));
+            double pointLon = longitude(source) + fraction * (longitude(target) - longitude(source));
+            snaps[i] = new Snap(
+                    external(source),
+                    external(target),
+                    fraction,
+                    edgeWeight(source, target),
+                    edgeWeight(target, source),
+                    pointLat,
+                    pointLon,
+                    KDTree.distance(lat, lon, pointLat, pointLon));
+        }
+        return snaps;
+    }
+
+    /**
+     * @return the snap of the given node itself
+     */
+    public Snap snap(int node) {
+        checkNode(node);
+        return new Snap(node, node, 0, -1, -1, getLatitude(node), getLongitude(node), 0);
+    }
+
+    /**
+     * @return the smallest weight of the open edges between the given internal node ids, -1 if
+     *     there is none
+     */
+    int edgeWeight(int source, int target) {
+        return edgeWeight(source, target, edgeWeights);
+    }
+
+    /**
+     * @return the smallest weight in weights, indexed like edgeWeights, of the open edges between
+     *     the given internal node ids, -1 if there is none
+     */
+    private int edgeWeight(int source, int target, int[] weights) {
+        int weight = -1;
+        if (compactEdges != null) {
+            var cursor = compactEdges.cursor();
+            cursor.moveTo(source);
+            while (cursor.next()) {
+                if (cursor.target() == target && (weight == -1 || cursor.weight() < weight)) {
+                    weight = cursor.weight();
+                }
+            }
+            return weight;
+        }
+        for (int i = offsetArray[source]; i < offsetArray[source + 1]; i++) {
+            if (edgeTargets[i] == target && (weight == -1 || weights[i] < weight)) {
+                weight = weights[i];
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Replaces the internal node ids in the given array by their .fmi file ids.
+     */
+    int[] toExternal(int[] nodes) {
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = external(nodes[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * @return a Dijkstra path finder using pooled search arrays, which should be closed after use
+     */
     public ClosestPathFinder getClosestPathFinder() {
-        return new ClosestPathFinder(this);
+        return getClosestPathFinder(QueueType.DEFAULT);
+    }
+
+    /**
+     * @return a Dijkstra path finder with the given priority queue, which should be closed after
+     *     use
+     */
+    public ClosestPathFinder getClosestPathFinder(QueueType queueType) {
+        return new ClosestPathFinder(this, acquireSearchState(queueType));
+    }
+
+    /**
+     * @return a bidirectional Dijkstra path finder using pooled search arrays of this and the
+     *     reversed graph, which should be closed after use
+     */
+    public BidirectionalPathFinder getBidirectionalPathFinder() {
+        requireUncompressed("bidirectional search");
+        return new BidirectionalPathFinder(this);
+    }
+
+    /**
+     * @return a finder of alternatives to the shortest path using pooled search arrays of this and
+     *     the reversed graph, which should be closed after use
+     */
+    public AlternativeRoutes getAlternativeRoutes() {
+        requireUncompressed("alternative routes");
+        return new AlternativeRoutes(this);
+    }
+
+    /**
+     * @return the bucket width of {@link DeltaStepping}, the system property routeplanner.delta
+     *     or four times the mean edge weight by default
+     */
+    int deltaStep() {
+        if (deltaStep == 0) {
+            String property = System.getProperty("routeplanner.delta");
+            long sum = compactEdges != null
+                    ? compactEdges.getWeightSum()
+                    : Arrays.stream(edgeWeights).parallel().asLongStream().sum();
+            long mean = sum / Math.max(1, getNumEdges());
+            deltaStep = property != null ? Integer.parseInt(property) : Math.clamp(4 * mean, 1, 1 << 30);
+        }
+        return deltaStep;
+    }
+
+    SearchState acquireSearchState(QueueType queueType) {
+        return searchStates.get(queueType).acquire();
+    }
+
+    void releaseSearchState(SearchState state) {
+        searchStates.get(state.queueType).release(state);
+    }
+
+    /**
+     * @return the graph with every edge reversed, sharing the coordinates with this graph. It is
+     *     built on first use.
+     */
+    synchronized Graph reversed() {
+        if (reversed != null) {
+            return reversed;
+        }
+        int numNodes = getNumNodes();
+        int[] reversedOffsets = new int[numNodes + 1];
+        for (int target : edgeTargets) {
+            reversedOffsets[target + 1]++;
+        }
+        for (int node = 0; node < numNodes; node++) {
+            reversedOffsets[node + 1] += reversedOffsets[node];
+        }
+
+        int[] positions = Arrays.copyOf(reversedOffsets, numNodes);
+        int[] reversedTargets = new int[getNumEdges()];
+        int[] reversedWeights = new int[getNumEdges()];
+        for (int node = 0; node < numNodes; node++) {
+            for (int i = offsetArray[node]; i < offsetArray[node + 1]; i++) {
+                int position = positions[edgeTargets[i]]++;
+                reversedTargets[position] = node;
+                reversedWeights[position] = edgeWeights[i];
+            }
+        }
+
+        reversed = new Graph(
+                reversedOffsets,
+                reversedTargets,
+                reversedWeights,
+                null,
+                latitudes,
+                longitudes,
+                tree,
+                toExternal,
+                toInternal,
+                reversedSearchStates);
+        reversed.reversed = this;
+        reversed.setConcurrency(concurrency);
+        return reversed;
+    }
+
+    /**
+     * Selects landmarks and computes their distance tables, which are used as lower bounds by the
+     * A* search of all {@link ClosestPathFinder}s afterwards.
+     *
+     * @throws IllegalArgumentException if count is less than 1 or too large for the graph, see
+     *     {@link Landmarks#select(Graph, int)}
+     */
+    public Landmarks computeLandmarks(int count) {
+        requireUncompressed("landmarks");
+        landmarks = Landmarks.select(this, count);
+        return landmarks;
+    }
+
+    /**
+     * @return the landmarks used by A* search, or null if none were computed
+     */
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Computes the weights of a profile, unless they exist, which {@link ClosestPathFinder}s take
+     * as alternative to the weights of the file afterwards.
+     */
+    public void computeProfile(Profile profile) {
+        requireUncompressed("profiles");
+        if (profile == Profile.DEFAULT || profileWeights.get(profile.ordinal()) != null) {
+            return;
+        }
+        int[] weights = new int[getNumEdges()];
+        IntStream.range(0, getNumNodes()).parallel().forEach(node -> {
+            for (int i = offsetArray[node]; i < offsetArray[node + 1]; i++) {
+                int target = openTargets[i];
+                double meters = 1000
+                        * KDTree.distance(latitudes[node], longitudes[node], latitudes[target], longitudes[target]);
+                weights[i] = profile.weight(meters, edgeSpeeds != null ? edgeSpeeds[i] & 0xff : 0);
+            }
+        });
+        profileWeights.compareAndSet(profile.ordinal(), null, weights);
+    }
+
+    /**
+     * @return whether the weights of profile are available to searches
+     */
+    public boolean hasProfile(Profile profile) {
+        return profile == Profile.DEFAULT || profileWeights.get(profile.ordinal()) != null;
+    }
+
+    /**
+     * @return the weights of profile, indexed like edgeWeights
+     * @throws IllegalArgumentException if they were not computed
+     */
+    int[] weights(Profile profile) {
+        if (!hasProfile(profile)) {
+            throw new IllegalArgumentException("profile " + profile + " was not computed");
+        }
+        return profile == Profile.DEFAULT ? edgeWeights : profileWeights.get(profile.ordinal());
+    }
+
+    /**
+     * @return the snap with the weights of its edge taken from weights, indexed like edgeWeights
+     */
+    Snap reweigh(Snap snap, int[] weights) {
+        if (snap.source() == snap.target()) {
+            return snap;
+        }
+        int source = internal(snap.source());
+        int target = internal(snap.target());
+        return new Snap(
+                snap.source(),
+                snap.target(),
+                snap.fraction(),
+                edgeWeight(source, target, weights),
+                edgeWeight(target, source, weights),
+                snap.latitude(),
+                snap.longitude(),
+                snap.distance());
+    }
+
+    public boolean isContracted() {
+        return hierarchy != null;
+    }
+
+    /**
+     * Returns a copy of this graph where the edge from sources[i] to targets[i] has the weight
+     * weights[i], or is closed if that is {@link #CLOSED}. A closed edge is opened again by giving
+     * it a weight. Parallel edges between the same nodes all get the new weight.
+     *
+     * The copy shares all arrays but the weights, and the targets if edges were closed or opened,
+     * with this graph, which stays unchanged for the searches running on it. The contraction
+     * hierarchy is not copied, and the landmarks only if no weight decreased, since their
+     * distances are only lower bounds as long as weights increase. The reversed graph is rebuilt
+     * right away if this graph has one.
+     *
+     * @throws IllegalArgumentException if a node or edge does not exist or a weight is negative
+     */
+    public Graph withEdgeWeights(int[] sources, int[] targets, int[] weights) {
+        requireUncompressed("changing edge weights");
+        int[] newWeights = edgeWeights.clone();
+        int[] newTargets = edgeTargets;
+        boolean decreased = false;
+        for (int update = 0; update < sources.length; update++) {
+            int source = internal(checkNode(sources[update]));
+            int target = internal(checkNode(targets[update]));
+            int weight = weights[update];
+            if (weight < 0 && weight != CLOSED) {
+                throw new IllegalArgumentException("negative weight " + weight);
+            }
+
+            boolean found = false;
+            for (int i = offsetArray[source]; i < offsetArray[source + 1]; i++) {
+                if (openTargets[i] != target) {
+                    continue;
+                }
+                found = true;
+                boolean closed = newTargets[i] != target;
+                if (weight == CLOSED || closed) {
+                    if (newTargets == edgeTargets) {
+                        newTargets = edgeTargets.clone();
+                    }
+                    // a closed edge is a loop, which never lowers a distance
+                    newTargets[i] = weight == CLOSED ? source : target;
+                }
+                if (weight != CLOSED) {
+                    decreased |= closed || weight < newWeights[i];
+                    newWeights[i] = weight;
+                }
+            }
+            if (!found) {
+                throw new IllegalArgumentException("no edge from " + sources[update] + " to " + targets[update]);
+            }
+        }
+
+        Graph reversed;
+        synchronized (this) {
+            reversed = this.reversed;
+        }
+        var graph = new Graph(this, newTargets, newWeights, decreased ? null : landmarks, reversed);
+        if (reversed != null) {
+            graph.reversed();
+        }
+        return graph;
+    }
+
+    private int checkNode(int node) {
+        if (node < 0 || node >= getNumNodes()) {
+            throw new IllegalArgumentException("unknown node " + node);
+        }
+        return node;
+    }
+
+    /**
+     * Preprocesses the graph into a contraction hierarchy, which is used by all path finders
+     * returned by {@link #getPathFinder()} afterwards.
+     */
+    public ContractionHierarchy contract() {
+        requireUncompressed("contraction");
+        hierarchy = ContractionHierarchy.build(this);
+        return hierarchy;
+    }
+
+    /**
+     * Sets the number of threads searching this graph at the same time, by default the number of
+     * cores. The pools of search states, of the reversed graph and of the contraction hierarchy
+     * keep that many for reuse, further ones released by more threads are dropped and allocated
+     * again by the next search. Copies of the graph inherit the setting.
+     *
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public void setConcurrency(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("at least one thread is required, got " + threads);
+        }
+        concurrency = threads;
+        for (var pool : searchStates.values()) {
+            pool.setMaxIdle(threads);
+        }
+        ContractionHierarchy hierarchy = this.hierarchy;
+        if (hierarchy != null) {
+            hierarchy.setConcurrency(threads);
+        }
+        Graph reversed;
+        synchronized (this) {
+            reversed = this.reversed;
+        }
+        if (reversed != null && reversed.concurrency != threads) {
+            reversed.setConcurrency(threads);
+        }
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * @return the many-to-many distances between the given nodes, computed by
+     *     {@link DistanceMatrix#compute()} with the contraction hierarchy if the graph was
+     *     contracted
+     */
+    public DistanceMatrix getDistanceMatrix(int[] sources, int[] targets) {
+        return new DistanceMatrix(this, sources, targets);
+    }
+
+    /**
+     * @return a path finder using the contraction hierarchy if the graph was contracted, A* if it
+     *     has landmarks, Dijkstra if it is compact and bidirectional Dijkstra otherwise
+     */
+    public PathFinder getPathFinder() {
+        var hierarchy = this.hierarchy;
+        if (hierarchy != null) {
+            return hierarchy.getPathFinder();
+        }
+        return landmarks != null || compactEdges != null ? getClosestPathFinder() : getBidirectionalPathFinder();
+    }
+
+    /**
+     * @return the path finder of {@link #getPathFinder()} for the default profile, a Dijkstra path
+     *     finder for the others, whose weights the other finders do not know
+     */
+    public PathFinder getPathFinder(Profile profile) {
+        return profile == Profile.DEFAULT ? getPathFinder() : getClosestPathFinder();
     }
 }
@@ -36,27 +36,30 @@ class GraphParser {
         int numNodes = Integer.parseInt(reader.readLine());
         int numEdges = Integer.parseInt(reader.readLine());
 
-        int[][] adjacencyArray = new int[numEdges][3];
-        double[][] nodes = new double[numNodes][3];
+        int[] edgeTargets = new int[numEdges];
+        int[] edgeWeights = new int[numEdges];
+        byte[] edgeSpeeds = new byte[numEdges];
+        double[] latitudes = new double[numNodes];
+        double[] longitudes = new double[numNodes];
         int[] offsetArray = new int[numNodes + 1];
 
         Arrays.fill(offsetArray, 0);
 
         for (int i = 0; i < numNodes; i++) {
             String[] node = reader.readLine().split(" ");
-            nodes[i][0] = Double.parseDouble(node[2]);
-            nodes[i][1] = Double.parseDouble(node[3]);
-            nodes[i][2] = Double.parseDouble(node[0]);
+            latitudes[i] = Double.parseDouble(node[2]);
+            longitudes[i] = Double.parseDouble(node[3]);
         }
 
-        var t = new TreeBuilderThread(nodes);
-        t.start();
+        var tree = KDTree.buildAsync(latitudes, longitudes);
 
         for (int i = 0; i < numEdges; i++) {
             String[] edge = reader.readLine().split(" ");
-            adjacencyArray[i][0] = Integer.parseInt(edge[0]);
-            adjacencyArray[i][1] = Integer.parseInt(edge[1]);
-            adjacencyArray[i][2] = Integer.parseInt(edge[2]);
+            edgeTargets[i] = Integer.parseInt(edge[1]);
+            edgeWeights[i] = Integer.parseInt(edge[2]);
+            if (edge.length > 4) {
+                edgeSpeeds[i] = Profile.speed(Integer.parseInt(edge[4]));
+            }
             offsetArray[Integer.parseInt(edge[0])]++;
         }
 
@@ -69,13 +72,7 @@ class GraphParser {
         }
         offsetArray[numNodes] = numEdges;
 
-        try {
-            t.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
-        return new Graph(adjacencyArray, offsetArray, nodes, t.tree);
+        return new Graph(
+                offsetArray, edgeTargets, edgeWeights, edgeSpeeds, latitudes, longitudes, tree.join(), null, null);
     }
 }
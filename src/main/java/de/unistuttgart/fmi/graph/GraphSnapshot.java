@@ -0,0 +1,320 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary snapshot of a parsed {@link Graph}, which is opened by memory mapping instead
+ * of parsing.
+ *
+ * Layout (little endian): a header with magic, version, array sizes, size and modification time
+ * of the source file, the source path, the {@link NodeOrder} and a CRC32C checksum of the payload,
+ * followed by the latitudes, longitudes, offsetArray, edgeTargets, edgeWeights, edgeSpeeds, the
+ * KD-tree and the file ids of renumbered nodes as raw arrays.
+ */
+class GraphSnapshot {
+
+    static final String SUFFIX = ".snapshot";
+
+    private static final long MAGIC = 0x5250534e41505348L; // "RPSNAPSH"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4096;
+    // bytes of the header before the source path: magic, six ints, three longs and the path length
+    private static final int FIXED_HEADER_SIZE = Long.BYTES + 6 * Integer.BYTES + 3 * Long.BYTES + Integer.BYTES;
+    // bytes per mapping, a single MappedByteBuffer can not exceed 2GB
+    private static final int WINDOW_SIZE = 1 << 30;
+
+    private GraphSnapshot() {}
+
+    static Path snapshotPathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    static boolean isSnapshot(Path path) {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(buffer, 0) == Long.BYTES && buffer.getLong(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to it, which is moved over snapshot once
+     * complete and deleted if writing fails.
+     *
+     * @throws IOException also if the path of source does not fit into the header
+     */
+    static void write(Graph graph, NodeOrder order, Path source, Path snapshot) throws IOException {
+        byte[] sourcePath = source.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        if (sourcePath.length > HEADER_SIZE - FIXED_HEADER_SIZE) {
+            throw new IOException(
+                    "the path of " + source + " is longer than " + (HEADER_SIZE - FIXED_HEADER_SIZE) + " bytes");
+        }
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try {
+            writeTemp(graph, order, source, temp, sourcePath);
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static void writeTemp(Graph graph, NodeOrder order, Path source, Path temp, byte[] sourcePath)
+            throws IOException {
+        int numNodes = graph.getNumNodes();
+        int numEdges = graph.getNumEdges();
+        int[] tree = graph.tree.getTree();
+        int[] toExternal = graph.toExternal != null ? graph.toExternal : new int[0];
+        try (var channel = FileChannel.open(
+                temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            var out = new ChecksumWriter(channel, HEADER_SIZE);
+            out.write(graph.latitudes);
+            out.write(graph.longitudes);
+            out.write(graph.offsetArray);
+            out.write(graph.edgeTargets);
+            out.write(graph.edgeWeights);
+            out.write(graph.edgeSpeeds != null ? graph.edgeSpeeds : new byte[numEdges]);
+            out.write(tree);
+            out.write(toExternal);
+            out.flush();
+
+            var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(numNodes);
+            header.putInt(numEdges);
+            header.putInt(tree.length);
+            header.putInt(order.ordinal());
+            header.putInt(toExternal.length);
+            header.putLong(Files.size(source));
+            header.putLong(Files.getLastModifiedTime(source).toMillis());
+            header.putLong(out.checksum.getValue());
+            header.putInt(sourcePath.length);
+            header.put(sourcePath);
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * @param source the file the snapshot is expected to be created from, or null to check against
+     *     the source path stored in the snapshot if it still exists
+     * @param order the node order the snapshot is expected to have, or null to accept any
+     */
+    static Graph read(Path snapshot, Path source, NodeOrder order) throws InvalidGraphException {
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw invalid(snapshot, "truncated or corrupted");
+            }
+            var header =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getLong() != MAGIC) {
+                throw invalid(snapshot, "not a graph snapshot");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw invalid(snapshot, "unsupported version " + version);
+            }
+            int numNodes = header.getInt();
+            int numEdges = header.getInt();
+            int treeSize = header.getInt();
+            NodeOrder snapshotOrder = NodeOrder.values()[header.getInt()];
+            int orderSize = header.getInt();
+            long sourceSize = header.getLong();
+            long sourceModified = header.getLong();
+            long checksum = header.getLong();
+            byte[] sourcePath = new byte[header.getInt()];
+            header.get(sourcePath);
+
+            if (source == null) {
+                source = Path.of(new String(sourcePath, StandardCharsets.UTF_8));
+            }
+            if (Files.exists(source)
+                    && (Files.size(source) != sourceSize
+                            || Files.getLastModifiedTime(source).toMillis() != sourceModified)) {
+                throw invalid(snapshot, "stale, " + source + " changed since the snapshot was written");
+            }
+
+            if (order != null && order != snapshotOrder) {
+                throw invalid(snapshot, "in node order " + snapshotOrder + " instead of " + order);
+            }
+
+            long expectedSize = HEADER_SIZE
+                    + 2L * Double.BYTES * numNodes
+                    + (long) Integer.BYTES * (numNodes + 1 + 2L * numEdges + treeSize + orderSize)
+                    + numEdges;
+            if (channel.size() != expectedSize) {
+                throw invalid(snapshot, "truncated or corrupted");
+            }
+
+            var in = new MappedReader(channel, HEADER_SIZE);
+            double[] latitudes = in.readDoubles(numNodes);
+            double[] longitudes = in.readDoubles(numNodes);
+            int[] offsetArray = in.readInts(numNodes + 1);
+            int[] edgeTargets = in.readInts(numEdges);
+            int[] edgeWeights = in.readInts(numEdges);
+            byte[] edgeSpeeds = in.readBytes(numEdges);
+            int[] tree = in.readInts(treeSize);
+            int[] toExternal = orderSize > 0 ? in.readInts(orderSize) : null;
+            if (in.checksum.getValue() != checksum) {
+                throw invalid(snapshot, "checksum mismatch");
+            }
+
+            var kdTree = new KDTree(latitudes, longitudes, tree);
+            int[] toInternal = toExternal != null ? Graph.invert(toExternal) : null;
+            return new Graph(
+                    offsetArray,
+                    edgeTargets,
+                    edgeWeights,
+                    edgeSpeeds,
+                    latitudes,
+                    longitudes,
+                    kdTree,
+                    toExternal,
+                    toInternal);
+        } catch (IOException | RuntimeException e) {
+            var message = String.format("Could not read snapshot %s", snapshot);
+            throw new InvalidGraphException(message, e);
+        }
+    }
+
+    private static InvalidGraphException invalid(Path snapshot, String reason) {
+        var message = String.format("Snapshot %s is %s", snapshot, reason);
+        return new InvalidGraphException(message, null);
+    }
+
+    /**
+     * Copies arrays out of read-only mappings of the snapshot while updating the checksum.
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final CRC32C checksum = new CRC32C();
+        private long position;
+
+        MappedReader(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        double[] readDoubles(int length) throws IOException {
+            double[] values = new double[length];
+            int done = 0;
+            while (done < length) {
+                int count = Math.min(length - done, WINDOW_SIZE / Double.BYTES);
+                map(count * Double.BYTES).asDoubleBuffer().get(values, done, count);
+                done += count;
+            }
+            return values;
+        }
+
+        int[] readInts(int length) throws IOException {
+            int[] values = new int[length];
+            int done = 0;
+            while (done < length) {
+                int count = Math.min(length - done, WINDOW_SIZE / Integer.BYTES);
+                map(count * Integer.BYTES).asIntBuffer().get(values, done, count);
+                done += count;
+            }
+            return values;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            byte[] values = new byte[length];
+            int done = 0;
+            while (done < length) {
+                int count = Math.min(length - done, WINDOW_SIZE);
+                map(count).get(values, done, count);
+                done += count;
+            }
+            return values;
+        }
+
+        private ByteBuffer map(int size) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            checksum.update(buffer.duplicate());
+            position += size;
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes arrays through a direct buffer while updating the checksum.
+     */
+    private static class ChecksumWriter {
+        private final FileChannel channel;
+        private final CRC32C checksum = new CRC32C();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        ChecksumWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void write(double[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                int count = Math.min(values.length - done, buffer.remaining() / Double.BYTES);
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asDoubleBuffer().put(values, done, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                done += count;
+            }
+        }
+
+        void write(int[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                int count = Math.min(values.length - done, buffer.remaining() / Integer.BYTES);
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.asIntBuffer().put(values, done, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                done += count;
+            }
+        }
+
+        void write(byte[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                int count = Math.min(values.length - done, buffer.remaining());
+                if (count == 0) {
+                    flush();
+                    continue;
+                }
+                buffer.put(values, done, count);
+                done += count;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+
+/**
+ * Binary minHeap over node ids, sorted by an externally owned key array. Supports add, poll,
+ * peek, update and clear. Clearing only touches the nodes still contained in the heap.
+ */
+class IndexedHeap implements NodeQueue {
+
+    private final int[] heap;
+    private final int[] indices;
+    private final int[] keys;
+    private int size;
+
+    IndexedHeap(int capacity, int[] keys) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        this.heap = new int[capacity];
+        this.indices = new int[capacity];
+        this.keys = keys;
+        Arrays.fill(indices, -1);
+        this.size = 0;
+    }
+
+    void add(int value) {
+        heap[size] = value;
+        indices[value] = size;
+        size++;
+        bubbleUp(size - 1);
+    }
+
+    /**
+     * Restores the heap order after the key of value changed. Adds value if it is not contained.
+     */
+    @Override
+    public void update(int value) {
+        int idx = indices[value];
+        if (idx == -1) {
+            add(value);
+            return;
+        }
+        bubbleDown(idx);
+        bubbleUp(idx);
+    }
+
+    @Override
+    public int peek() {
+        return heap[0];
+    }
+
+    @Override
+    public int poll() {
+        int result = heap[0];
+
+        size--;
+        heap[0] = heap[size];
+        indices[heap[0]] = 0;
+        indices[result] = -1;
+        if (size > 0) {
+            bubbleDown(0);
+        }
+
+        return result;
+    }
+
+    boolean contains(int value) {
+        return indices[value] != -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            indices[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void bubbleUp(int index) {
+        while (index > 0) {
+            int parentIndex = (index - 1) / 2;
+            if (keys[heap[index]] >= keys[heap[parentIndex]]) {
+                break;
+            }
+            swap(index, parentIndex);
+            index = parentIndex;
+        }
+    }
+
+    private void bubbleDown(int index) {
+        while (true) {
+            int leftChild = 2 * index + 1;
+            int rightChild = 2 * index + 2;
+            int smallest = index;
+
+            if (leftChild < size && keys[heap[leftChild]] < keys[heap[smallest]]) {
+                smallest = leftChild;
+            }
+
+            if (rightChild < size && keys[heap[rightChild]] < keys[heap[smallest]]) {
+                smallest = rightChild;
+            }
+
+            if (smallest == index) {
+                break;
+            }
+
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int temp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temp;
+        indices[heap[i]] = i;
+        indices[heap[j]] = j;
+    }
+}
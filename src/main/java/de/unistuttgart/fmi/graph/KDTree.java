@@ -1,138 +1,544 @@
 package de.unistuttgart.fmi.graph;
 
-import java.util.ArrayDeque;
+import de.unistuttgart.fmi.metrics.SnapEvent;
+import de.unistuttgart.fmi.metrics.SnapMetrics;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Simple Implementation of a KDTree with k=2 fixed to find the nearest node in
  * a graph to given coordinates.
  *
- * Distances are calculated using the great circle distance with the haversine
- * formula. The median is selected with the quickSelect algorithm.
+ * The tree is a complete binary tree stored in an array, splitting alternately by latitude and
+ * longitude. The coordinates are copied into one array in tree order, so a search reads them
+ * sequentially instead of through the node ids. The tree of a compact graph holds them as
+ * microdegrees in ints instead, see {@link #compact(int[], int[])}.
  *
+ * The tree is built in parallel with fork/join, selecting the medians with introselect.
+ *
+ * Searches descend iteratively and compare squared distances in an equirectangular projection
+ * around the query point, where a splitting line is cheap to bound. The projection is exact
+ * enough for the few kilometres around a snapped point; the final candidates are ranked by their
+ * great circle distance with the haversine formula.
+ *
+ * Radius queries must not miss any node, so they prune by bounds of the great circle distance
+ * instead: a point beyond a latitude split is at least their difference in latitude away, and a
+ * point beyond a longitude split at least the distance to the meridian of the split.
  */
 class KDTree {
     private static final int k = 2;
-    private final double[][] tree;
+    private static final double EARTH_RADIUS = 6371.0; // kilometers
+    // candidates ranked by great circle distance for a nearest neighbour query
+    private static final int NEAREST_CANDIDATES = 4;
+    // ranges smaller than this are built by the task that selected their parent
+    private static final int PARALLEL_BUILD_THRESHOLD = 1 << 14;
 
-    KDTree(double[][] points) {
-        int n = points.length;
-        int arraySize = (1 << ((int) Math.ceil(Math.log(n + 1) / Math.log(2)))) - 1;
-        tree = new double[arraySize][];
-        buildTree(Arrays.copyOf(points, points.length));
-    }
+    private static final SnapMetrics NEAREST_METRICS = new SnapMetrics("nearest");
+    private static final SnapMetrics K_NEAREST_METRICS = new SnapMetrics("k_nearest");
+    private static final SnapMetrics RADIUS_METRICS = new SnapMetrics("radius");
 
-    private void buildTree(double[][] points) {
-        if (points == null || points.length == 0) {
-            return;
+    // node ids in tree order, -1 for empty slots
+    private final int[] tree;
+    // latitude and longitude of every slot in tree order, null in a compact tree
+    private final double[] points;
+    // latitude and longitude of every slot in microdegrees in a compact tree, null otherwise
+    private final int[] microPoints;
+    private final int maxDepth;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(this::newScratch);
+
+    /**
+     * Builds the tree with the common fork/join pool.
+     */
+    KDTree(double[] latitudes, double[] longitudes) {
+        int n = latitudes.length;
+        int arraySize = n == 0 ? 0 : (1 << (32 - Integer.numberOfLeadingZeros(n))) - 1;
+        tree = new int[arraySize];
+        Arrays.fill(tree, -1);
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i;
         }
+        double[][] values = {latitudes.clone(), longitudes.clone()};
+        ForkJoinPool.commonPool().invoke(new BuildTask(ids, values, 0, n - 1, 0));
+        this.points = pack(tree, latitudes, longitudes);
+        this.microPoints = null;
+        this.maxDepth = depth(tree.length);
+    }
 
-        ArrayDeque<int[]> stack = new ArrayDeque<>();
-        stack.push(new int[] {0, points.length - 1, 0, 0});
+    /**
+     * Starts building the tree in the common fork/join pool, so it can overlap with other stages
+     * of loading a graph.
+     */
+    static ForkJoinTask<KDTree> buildAsync(double[] latitudes, double[] longitudes) {
+        return ForkJoinPool.commonPool().submit(() -> new KDTree(latitudes, longitudes));
+    }
 
-        while (!stack.isEmpty()) {
-            int[] current = stack.pop();
-            int start = current[0];
-            int end = current[1];
-            int depth = current[2];
-            int index = current[3];
+    /**
+     * Restores a tree previously built for the given coordinates.
+     */
+    KDTree(double[] latitudes, double[] longitudes, int[] tree) {
+        this.tree = tree;
+        this.points = pack(tree, latitudes, longitudes);
+        this.microPoints = null;
+        this.maxDepth = depth(tree.length);
+    }
 
-            if (start > end) {
-                continue;
+    private KDTree(int[] tree, int[] microPoints) {
+        this.tree = tree;
+        this.points = null;
+        this.microPoints = microPoints;
+        this.maxDepth = depth(tree.length);
+    }
+
+    /**
+     * @return a tree with the same slots over the given coordinates in microdegrees, which are
+     *     the coordinates of this tree rounded. Rounding keeps their order, so every slot still
+     *     splits its subtrees.
+     */
+    KDTree compact(int[] microLatitudes, int[] microLongitudes) {
+        int[] microPoints = new int[2 * tree.length];
+        for (int i = 0; i < tree.length; i++) {
+            if (tree[i] != -1) {
+                microPoints[2 * i] = microLatitudes[tree[i]];
+                microPoints[2 * i + 1] = microLongitudes[tree[i]];
             }
+        }
+        return new KDTree(tree, microPoints);
+    }
 
-            int axis = depth % k;
-            int medianIndex = (start + end) / 2;
-            quickSelect(points, start, end, medianIndex, axis);
+    int[] getTree() {
+        return tree;
+    }
 
-            tree[index] = points[medianIndex];
+    /**
+     * @return the bytes of the slots and their coordinates
+     */
+    long getBytes() {
+        return 4L * tree.length + (points != null ? 8L * points.length : 4L * microPoints.length);
+    }
+
+    private double latitude(int slot) {
+        return points != null ? points[2 * slot] : microPoints[2 * slot] / Graph.MICRODEGREES;
+    }
+
+    private double longitude(int slot) {
+        return points != null ? points[2 * slot + 1] : microPoints[2 * slot + 1] / Graph.MICRODEGREES;
+    }
 
-            stack.push(new int[] {start, medianIndex - 1, depth + 1, 2 * index + 1});
-            stack.push(new int[] {medianIndex + 1, end, depth + 1, 2 * index + 2});
+    private static double[] pack(int[] tree, double[] latitudes, double[] longitudes) {
+        double[] points = new double[2 * tree.length];
+        for (int i = 0; i < tree.length; i++) {
+            if (tree[i] != -1) {
+                points[2 * i] = latitudes[tree[i]];
+                points[2 * i + 1] = longitudes[tree[i]];
+            }
         }
+        return points;
+    }
+
+    /**
+     * @return the depth of the slot index in the tree, starting with 0 at the root
+     */
+    private static int depth(int index) {
+        return 31 - Integer.numberOfLeadingZeros(index + 1);
     }
 
-    private void quickSelect(double[][] points, int low, int high, int medianIndex, int axis) {
-        if (low == high) return;
+    /**
+     * Builds the subtrees of large ranges in parallel. The ids and their coordinates are permuted
+     * together in primitive arrays, so partitioning reads the coordinates sequentially.
+     */
+    private class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        int pivotIndex = partition(points, low, high, axis);
+        private final int[] ids;
+        private final double[][] values;
+        private final int start;
+        private final int end;
+        private final int index;
+
+        BuildTask(int[] ids, double[][] values, int start, int end, int index) {
+            this.ids = ids;
+            this.values = values;
+            this.start = start;
+            this.end = end;
+            this.index = index;
+        }
 
-        if (medianIndex == pivotIndex) {
-            return;
-        } else if (medianIndex < pivotIndex) {
-            quickSelect(points, low, pivotIndex - 1, medianIndex, axis);
-        } else {
-            quickSelect(points, pivotIndex + 1, high, medianIndex, axis);
+        @Override
+        protected void compute() {
+            build(start, end, index);
+        }
+
+        private void build(int start, int end, int index) {
+            if (start > end) {
+                return;
+            }
+            int axis = depth(index) % k;
+            int medianIndex = (start + end) >>> 1;
+            select(ids, values[axis], values[1 - axis], start, end, medianIndex);
+            tree[index] = ids[medianIndex];
+
+            if (end - start < PARALLEL_BUILD_THRESHOLD) {
+                build(start, medianIndex - 1, 2 * index + 1);
+                build(medianIndex + 1, end, 2 * index + 2);
+            } else {
+                invokeAll(
+                        new BuildTask(ids, values, start, medianIndex - 1, 2 * index + 1),
+                        new BuildTask(ids, values, medianIndex + 1, end, 2 * index + 2));
+            }
         }
     }
 
-    private int partition(double[][] points, int low, int high, int axis) {
-        double[] pivot = points[high];
-        int storeIndex = low;
+    /**
+     * Introselect: moves the element of rank target within [low, high] by keys to position target,
+     * with smaller or equal keys before and larger or equal keys after it. Pivots are the median of
+     * three, ranges are split three-way so equal keys end the search early. If the range shrinks
+     * too slowly, the exact median of a sorted copy of the keys is used as pivot, which bounds the
+     * time by O(n log n) even on adversarial input.
+     */
+    static void select(int[] ids, double[] keys, double[] others, int low, int high, int target) {
+        int badSplits = 0;
+        while (low < high) {
+            int size = high - low + 1;
+            double pivot;
+            if (badSplits > 2 * (32 - Integer.numberOfLeadingZeros(size))) {
+                double[] sorted = Arrays.copyOfRange(keys, low, high + 1);
+                Arrays.sort(sorted);
+                pivot = sorted[target - low];
+            } else {
+                int middle = (low + high) >>> 1;
+                pivot = median(keys[low], keys[middle], keys[high]);
+            }
 
-        for (int i = low; i < high; i++) {
-            if (points[i][axis] < pivot[axis]) {
-                swap(points, i, storeIndex);
-                storeIndex++;
+            // three-way partition: [low, lt) < pivot, [lt, gt] == pivot, (gt, high] > pivot
+            int lt = low;
+            int gt = high;
+            int i = low;
+            while (i <= gt) {
+                if (keys[i] < pivot) {
+                    swap(ids, keys, others, lt++, i++);
+                } else if (keys[i] > pivot) {
+                    swap(ids, keys, others, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (target < lt) {
+                high = lt - 1;
+            } else if (target > gt) {
+                low = gt + 1;
+            } else {
+                return;
+            }
+            if (high - low + 1 > size / 2 + size / 4) {
+                badSplits++;
             }
         }
-        swap(points, storeIndex, high);
-        return storeIndex;
     }
 
-    private void swap(double[][] points, int i, int j) {
-        double[] temp = points[i];
-        points[i] = points[j];
-        points[j] = temp;
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
     }
 
+    private static void swap(int[] ids, double[] keys, double[] others, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double other = others[i];
+        others[i] = others[j];
+        others[j] = other;
+    }
+
+    /**
+     * @return latitude, longitude and id of the node closest to target
+     */
     public double[] nearestNeighbor(double[] target) {
-        return nearestNeighbor(0, target, 0, null, Double.MAX_VALUE);
+        int slot = nearestSlot(target[0], target[1]);
+        if (slot == -1) {
+            return null;
+        }
+        return new double[] {latitude(slot), longitude(slot), tree[slot]};
+    }
+
+    /**
+     * @return the id of the node closest to the given coordinates, or -1 for an empty tree
+     */
+    int nearest(double lat, double lon) {
+        int slot = nearestSlot(lat, lon);
+        return slot == -1 ? -1 : tree[slot];
     }
 
-    private double[] nearestNeighbor(int index, double[] target, int depth, double[] bestPoint, double bestDistance) {
-        if (index >= tree.length || tree[index] == null) {
-            return bestPoint;
+    private int nearestSlot(double lat, double lon) {
+        var event = new SnapEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        Scratch s = scratch.get();
+        int count = collectNearest(s, lat, lon, NEAREST_CANDIDATES);
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            double distance = getDistance(lat, lon, s.heapSlots[i]);
+            if (distance < bestDistance || distance == bestDistance && tree[s.heapSlots[i]] < tree[best]) {
+                best = s.heapSlots[i];
+                bestDistance = distance;
+            }
         }
+        NEAREST_METRICS.record(event, startNanos, lat, lon, s.visited);
+        return best;
+    }
+
+    /**
+     * @return the ids of the count nodes closest to the given coordinates, closest first
+     */
+    int[] nearest(double lat, double lon, int count) {
+        var event = new SnapEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        Scratch s = scratch.get();
+        int found = collectNearest(s, lat, lon, count);
+        int[] nearest = sortByDistance(lat, lon, s.heapSlots, found);
+        K_NEAREST_METRICS.record(event, startNanos, lat, lon, s.visited);
+        return nearest;
+    }
 
-        double distance = getDistance(target, tree[index]);
-        if (distance < bestDistance) {
-            bestPoint = tree[index];
-            bestDistance = distance;
+    /**
+     * @return the ids of all nodes within radius kilometers of the given coordinates, closest first
+     */
+    int[] withinRadius(double lat, double lon, double radius) {
+        var event = new SnapEvent();
+        event.begin();
+        long startNanos = System.nanoTime();
+        Scratch s = scratch.get();
+        // the central angle of the radius, and the largest differences in latitude and longitude
+        // of points within it, with a little slack for rounding
+        double angle = radius / EARTH_RADIUS * (1 + 1e-9);
+        double latLimit = Math.toDegrees(angle);
+        double lonLimit = lonLimit(lat, angle);
+
+        int[] found = new int[16];
+        int count = 0;
+        int visited = 0;
+        int stackSize = 0;
+        s.stackSlots[stackSize] = 0;
+        s.stackBounds[stackSize++] = 0;
+        while (stackSize > 0) {
+            int index = s.stackSlots[--stackSize];
+            while (index < tree.length && tree[index] != -1) {
+                visited++;
+                if (Math.abs(lat - latitude(index)) <= latLimit
+                        && longitudeDifference(lon, longitude(index)) <= lonLimit
+                        && getDistance(lat, lon, index) <= radius) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = index;
+                }
+                boolean byLatitude = (depth(index) & 1) == 0;
+                double difference = byLatitude ? lat - latitude(index) : lon - longitude(index);
+                int near = difference < 0 ? 2 * index + 1 : 2 * index + 2;
+                // the far side starts at the split, or wraps around to the query at 180 degrees
+                boolean farWithin = byLatitude
+                        ? Math.abs(difference) <= latLimit
+                        : Math.min(Math.abs(difference), 180 - Math.abs(lon)) <= lonLimit;
+                if (farWithin) {
+                    s.stackSlots[stackSize] = near == 2 * index + 1 ? 2 * index + 2 : 2 * index + 1;
+                    s.stackBounds[stackSize++] = 0;
+                }
+                index = near;
+            }
         }
+        int[] within = sortByDistance(lat, lon, found, count);
+        RADIUS_METRICS.record(event, startNanos, lat, lon, visited);
+        return within;
+    }
 
-        int axis = depth % k;
-        int leftIndex = 2 * index + 1;
-        int rightIndex = 2 * index + 2;
+    /**
+     * @return the largest difference in longitude in degrees of points within the central angle
+     *     of the point at lat, infinite if the angle reaches a pole. The distance to a meridian
+     *     dLon away is asin(cos(lat) sin(dLon)) for dLon up to 90 degrees, and the distance to
+     *     the nearer pole beyond.
+     */
+    private static double lonLimit(double lat, double angle) {
+        double cosLat = Math.cos(Math.toRadians(lat));
+        if (angle >= Math.PI / 2 || Math.sin(angle) >= cosLat) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.toDegrees(Math.asin(Math.sin(angle) / cosLat));
+    }
 
-        int nextIndex = (target[axis] < tree[index][axis]) ? leftIndex : rightIndex;
-        int otherIndex = (target[axis] < tree[index][axis]) ? rightIndex : leftIndex;
+    /**
+     * @return the difference of two longitudes in degrees, the shorter way around
+     */
+    private static double longitudeDifference(double lon1, double lon2) {
+        double difference = Math.abs(lon1 - lon2);
+        return Math.min(difference, 360 - difference);
+    }
 
-        bestPoint = nearestNeighbor(nextIndex, target, depth + 1, bestPoint, bestDistance);
-        bestDistance = getDistance(target, bestPoint);
+    /**
+     * Collects the slots of the count points closest in the projection into the max-heap of the
+     * scratch space and counts the visited tree nodes.
+     *
+     * @return the number of collected slots
+     */
+    private int collectNearest(Scratch s, double lat, double lon, int count) {
+        s.ensureHeap(count);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        int heapSize = 0;
+        int visited = 0;
+        int stackSize = 0;
+        s.stackSlots[stackSize] = 0;
+        s.stackBounds[stackSize++] = 0;
+        while (stackSize > 0) {
+            int index = s.stackSlots[--stackSize];
+            if (heapSize == count && s.stackBounds[stackSize] >= s.heapDistances[0]) {
+                continue;
+            }
+            while (index < tree.length && tree[index] != -1) {
+                visited++;
+                double distance = projectedDistance(lat, lon, cosLat, index);
+                if (heapSize < count) {
+                    s.push(heapSize++, index, distance);
+                } else if (distance < s.heapDistances[0]) {
+                    s.replaceTop(heapSize, index, distance);
+                }
 
-        if (Math.abs(target[axis] - tree[index][axis]) < bestDistance) {
-            bestPoint = nearestNeighbor(otherIndex, target, depth + 1, bestPoint, bestDistance);
+                double difference = splitDifference(lat, lon, cosLat, index);
+                double planeDistance = difference * difference;
+                int near = difference < 0 ? 2 * index + 1 : 2 * index + 2;
+                if (heapSize < count || planeDistance < s.heapDistances[0]) {
+                    s.stackSlots[stackSize] = near == 2 * index + 1 ? 2 * index + 2 : 2 * index + 1;
+                    s.stackBounds[stackSize++] = planeDistance;
+                }
+                index = near;
+            }
         }
+        s.visited = visited;
+        return heapSize;
+    }
 
-        return bestPoint;
+    /**
+     * @return the signed distance of the query point to the splitting line of the slot, negative
+     *     if the query lies in the left subtree
+     */
+    private double splitDifference(double lat, double lon, double cosLat, int index) {
+        if ((depth(index) & 1) == 0) {
+            return lat - latitude(index);
+        }
+        return (lon - longitude(index)) * cosLat;
+    }
+
+    private double projectedDistance(double lat, double lon, double cosLat, int index) {
+        double dLat = lat - latitude(index);
+        double dLon = (lon - longitude(index)) * cosLat;
+        return dLat * dLat + dLon * dLon;
     }
 
-    private double getDistance(double[] point1, double[] point2) {
-        final double R = 6371.0; // Earth radius in kilometers
+    private int[] sortByDistance(double lat, double lon, int[] slots, int count) {
+        double[] distances = new double[count];
+        for (int i = 0; i < count; i++) {
+            distances[i] = getDistance(lat, lon, slots[i]);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = tree[slots[order[i]]];
+        }
+        return ids;
+    }
 
-        double lat1 = Math.toRadians(point1[0]);
-        double lon1 = Math.toRadians(point1[1]);
-        double lat2 = Math.toRadians(point2[0]);
-        double lon2 = Math.toRadians(point2[1]);
+    /**
+     * @return great circle distance in kilometers between the coordinates and the point of a slot
+     */
+    private double getDistance(double lat, double lon, int slot) {
+        return distance(lat, lon, latitude(slot), longitude(slot));
+    }
 
-        double dlat = lat2 - lat1;
-        double dlon = lon2 - lon1;
+    /**
+     * @return great circle distance in kilometers, calculated with the haversine formula
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dlat = phi2 - phi1;
+        double dlon = Math.toRadians(lon2 - lon1);
 
         double a = Math.sin(dlat / 2) * Math.sin(dlat / 2)
-                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dlon / 2) * Math.sin(dlon / 2);
+                + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dlon / 2) * Math.sin(dlon / 2);
 
         double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
+        return EARTH_RADIUS * c;
+    }
+
+    private Scratch newScratch() {
+        return new Scratch(maxDepth + 1);
+    }
+
+    /**
+     * Per thread search stack and candidate heap, so queries do not allocate.
+     */
+    private static class Scratch {
+        // slots still to visit and a lower bound of their squared distance
+        final int[] stackSlots;
+        final double[] stackBounds;
+        // max-heap of the best candidates by projected distance
+        int[] heapSlots = new int[NEAREST_CANDIDATES];
+        double[] heapDistances = new double[NEAREST_CANDIDATES];
+        // tree nodes visited by the last collection of candidates
+        int visited;
+
+        Scratch(int depth) {
+            this.stackSlots = new int[depth + 1];
+            this.stackBounds = new double[depth + 1];
+        }
+
+        void ensureHeap(int count) {
+            if (heapSlots.length < count) {
+                heapSlots = new int[count];
+                heapDistances = new double[count];
+            }
+        }
+
+        void push(int size, int slot, double distance) {
+            int index = size;
+            while (index > 0 && heapDistances[(index - 1) / 2] < distance) {
+                int parent = (index - 1) / 2;
+                heapSlots[index] = heapSlots[parent];
+                heapDistances[index] = heapDistances[parent];
+                index = parent;
+            }
+            heapSlots[index] = slot;
+            heapDistances[index] = distance;
+        }
+
+        void replaceTop(int size, int slot, double distance) {
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heapDistances[child + 1] > heapDistances[child]) {
+                    child++;
+                }
+                if (heapDistances[child] <= distance) {
+                    break;
+                }
+                heapSlots[index] = heapSlots[child];
+                heapDistances[index] = heapDistances[child];
+                index = child;
+            }
+            heapSlots[index] = slot;
+            heapDistances[index] = distance;
+        }
     }
 }
@@ -0,0 +1,167 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Landmarks for A* search with lower bounds from the triangle inequality (ALT).
+ *
+ * For every landmark L the distances d(L, v) from and d(v, L) to all nodes v are stored
+ * node-major, so the bounds of a node lie next to each other in memory. For a target t, both
+ * d(L, t) - d(L, v) and d(v, L) - d(t, L) are lower bounds of d(v, t), and their maximum over all
+ * landmarks is a consistent potential.
+ *
+ * Both tables are single int arrays of numNodes times the number of landmarks entries, which
+ * {@link #select(Graph, int)} checks to fit, so no index into them overflows.
+ */
+public class Landmarks {
+
+    private static final int INFINITY = SearchState.INFINITY;
+
+    // node ids of the .fmi file, the internal ones in nodes
+    private final int[] ids;
+    private final int[] nodes;
+    private final int[] fromLandmarks;
+    private final int[] toLandmarks;
+
+    private Landmarks(Graph graph, int[] nodes, int[] fromLandmarks, int[] toLandmarks) {
+        this.ids = graph.toExternal(nodes.clone());
+        this.nodes = nodes;
+        this.fromLandmarks = fromLandmarks;
+        this.toLandmarks = toLandmarks;
+    }
+
+    /**
+     * Selects up to count landmarks by farthest selection: the first landmark is the node
+     * farthest from an arbitrary node, every further one the node farthest from all landmarks
+     * chosen so far. Fewer landmarks are selected if no node is farther than 0 from them.
+     *
+     * @throws IllegalArgumentException if count is less than 1 or the distance tables of count
+     *     landmarks do not fit into an array
+     */
+    static Landmarks select(Graph graph, int count) {
+        int numNodes = graph.getNumNodes();
+        if (count < 1) {
+            throw new IllegalArgumentException("at least one landmark is required, got " + count);
+        }
+        int tableSize;
+        try {
+            tableSize = Math.multiplyExact(numNodes, count);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                    count + " landmarks for " + numNodes + " nodes exceed the maximum array size", e);
+        }
+        int[] nodes = new int[count];
+        int[] fromLandmarks = new int[tableSize];
+        int[] minDistances = new int[numNodes];
+
+        int selected = 0;
+        try (var finder = graph.getClosestPathFinder()) {
+            finder.searchAll(numNodes / 2);
+            int next = farthest(finder, minDistances, true);
+
+            while (next != -1 && selected < count) {
+                nodes[selected] = next;
+                finder.searchAll(next);
+                for (int node = 0; node < numNodes; node++) {
+                    fromLandmarks[node * count + selected] = finder.distance(node);
+                }
+                selected++;
+                next = farthest(finder, minDistances, selected == 1);
+            }
+        }
+
+        if (selected < count) {
+            int[] compacted = new int[numNodes * selected];
+            for (int node = 0; node < numNodes; node++) {
+                System.arraycopy(fromLandmarks, node * count, compacted, node * selected, selected);
+            }
+            fromLandmarks = compacted;
+            nodes = Arrays.copyOf(nodes, selected);
+        }
+
+        // distances to the landmarks are distances from them in the reversed graph
+        int numLandmarks = selected;
+        int[] landmarkNodes = nodes;
+        int[] toLandmarks = new int[numNodes * numLandmarks];
+        Graph reversed = graph.reversed();
+        IntStream.range(0, numLandmarks).parallel().forEach(i -> {
+            try (var finder = reversed.getClosestPathFinder()) {
+                finder.searchAll(landmarkNodes[i]);
+                for (int node = 0; node < numNodes; node++) {
+                    toLandmarks[node * numLandmarks + i] = finder.distance(node);
+                }
+            }
+        });
+
+        return new Landmarks(graph, landmarkNodes, fromLandmarks, toLandmarks);
+    }
+
+    /**
+     * Updates the minimum distances of all nodes to the chosen landmarks with the distances of the
+     * last one-to-all search and returns the reached node with the largest one, or -1 if all
+     * reached nodes have the minimum distance 0. With first set, the minimum distances are
+     * initialized instead.
+     */
+    private static int farthest(ClosestPathFinder finder, int[] minDistances, boolean first) {
+        int farthest = -1;
+        int farthestDistance = 0;
+        for (int node = 0; node < minDistances.length; node++) {
+            int distance = finder.distance(node);
+            if (first || distance < minDistances[node]) {
+                minDistances[node] = distance;
+            }
+            if (minDistances[node] != INFINITY && minDistances[node] > farthestDistance) {
+                farthest = node;
+                farthestDistance = minDistances[node];
+            }
+        }
+        return farthest;
+    }
+
+    public int getCount() {
+        return nodes.length;
+    }
+
+    /**
+     * @return the landmark node ids
+     */
+    public int[] getNodes() {
+        return ids.clone();
+    }
+
+    /**
+     * Copies the distances of target from and to the landmarks, which are needed for every bound
+     * towards that target.
+     */
+    void loadTarget(int target, int[] targetFrom, int[] targetTo) {
+        int count = nodes.length;
+        System.arraycopy(fromLandmarks, target * count, targetFrom, 0, count);
+        System.arraycopy(toLandmarks, target * count, targetTo, 0, count);
+    }
+
+    /**
+     * @return a lower bound of the distance from node to the target loaded into targetFrom and
+     *     targetTo, or INFINITY if node can not reach the target
+     */
+    int lowerBound(int node, int[] targetFrom, int[] targetTo) {
+        int count = nodes.length;
+        int base = node * count;
+        int bound = 0;
+        for (int i = 0; i < count; i++) {
+            int toLandmark = toLandmarks[base + i];
+            if (targetTo[i] != INFINITY) {
+                // the target reaches the landmark, so node can not reach the target if it does not
+                if (toLandmark == INFINITY) {
+                    return INFINITY;
+                }
+                bound = Math.max(bound, toLandmark - targetTo[i]);
+            }
+            int fromLandmark = fromLandmarks[base + i];
+            if (fromLandmark != INFINITY && targetFrom[i] != INFINITY) {
+                bound = Math.max(bound, targetFrom[i] - fromLandmark);
+            }
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,117 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Renumbering of the nodes of a {@link Graph} to place nodes that are close in the road network
+ * close in memory, so the search arrays indexed by node id are accessed mostly within a few
+ * cache lines.
+ *
+ * An order lists the original node ids in their new order, i.e. it maps new (internal) ids to the
+ * original (external) ones used in .fmi and .que files.
+ */
+enum NodeOrder {
+    /** the order of the .fmi file */
+    FILE,
+    /** sorted along a Hilbert curve over the bounding box of the coordinates */
+    HILBERT,
+    /** breadth-first search order along the outgoing edges */
+    BFS;
+
+    private static final int HILBERT_BITS = 16;
+
+    /**
+     * @return the order selected by the system property routeplanner.order ("file", "hilbert" or
+     *     "bfs"), HILBERT by default
+     */
+    static NodeOrder fromProperty() {
+        return valueOf(System.getProperty("routeplanner.order", "hilbert").toUpperCase());
+    }
+
+    /**
+     * @return the original node ids in their new order, or null for FILE
+     */
+    int[] compute(Graph graph) {
+        return switch (this) {
+            case FILE -> null;
+            case HILBERT -> hilbert(graph.latitudes, graph.longitudes);
+            case BFS -> breadthFirst(graph);
+        };
+    }
+
+    private static int[] hilbert(double[] latitudes, double[] longitudes) {
+        int numNodes = latitudes.length;
+        double minLat = Arrays.stream(latitudes).parallel().min().orElse(0);
+        double maxLat = Arrays.stream(latitudes).parallel().max().orElse(0);
+        double minLon = Arrays.stream(longitudes).parallel().min().orElse(0);
+        double maxLon = Arrays.stream(longitudes).parallel().max().orElse(0);
+        int cells = 1 << HILBERT_BITS;
+        double latScale = (cells - 1) / Math.max(maxLat - minLat, 1e-9);
+        double lonScale = (cells - 1) / Math.max(maxLon - minLon, 1e-9);
+
+        // curve index (32 bits) above the node id (31 bits), so sorting keeps ties stable
+        long[] keys = new long[numNodes];
+        IntStream.range(0, numNodes).parallel().forEach(node -> {
+            int x = (int) ((longitudes[node] - minLon) * lonScale);
+            int y = (int) ((latitudes[node] - minLat) * latScale);
+            keys[node] = (hilbertIndex(x, y) << 31) | node;
+        });
+        Arrays.parallelSort(keys);
+
+        int[] order = new int[numNodes];
+        for (int i = 0; i < numNodes; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+        return order;
+    }
+
+    /**
+     * @return the position of cell (x, y) on the Hilbert curve filling the 2^16 x 2^16 grid
+     */
+    static long hilbertIndex(int x, int y) {
+        long index = 0;
+        for (int s = 1 << (HILBERT_BITS - 1); s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return index;
+    }
+
+    private static int[] breadthFirst(Graph graph) {
+        int numNodes = graph.getNumNodes();
+        int[] order = new int[numNodes];
+        boolean[] visited = new boolean[numNodes];
+        int head = 0;
+        int tail = 0;
+        for (int root = 0; root < numNodes; root++) {
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            order[tail++] = root;
+            while (head < tail) {
+                int current = order[head++];
+                for (int i = graph.offsetArray[current]; i < graph.offsetArray[current + 1]; i++) {
+                    int neighbour = graph.edgeTargets[i];
+                    if (!visited[neighbour]) {
+                        visited[neighbour] = true;
+                        order[tail++] = neighbour;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,30 @@
+package de.unistuttgart.fmi.graph;
+
+/**
+ * Priority queue over node ids, sorted by an externally owned key array like the distances of a
+ * search. Implementations are created by {@link QueueType}.
+ */
+interface NodeQueue {
+
+    /**
+     * Adds node or restores the order after its key decreased.
+     */
+    void update(int node);
+
+    /**
+     * @return the node with the smallest key without removing it
+     */
+    int peek();
+
+    /**
+     * @return the node with the smallest key, which is removed
+     */
+    int poll();
+
+    boolean isEmpty();
+
+    /**
+     * Removes all nodes, in time proportional to the number of contained nodes.
+     */
+    void clear();
+}
@@ -0,0 +1,367 @@
+package de.unistuttgart.fmi.graph;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Parser for .fmi files producing the same graph as {@link GraphParser}, but using all cores.
+ *
+ * The file is read in large chunks that are split at line boundaries. A first pass counts the
+ * lines of every chunk to know which node or edge the chunk starts with, a second pass parses the
+ * chunks in parallel directly from the bytes. The offsets are built with a parallel prefix sum.
+ */
+class ParallelGraphParser {
+
+    private static final int CHUNK_SIZE = 8 << 20;
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22
+    };
+
+    private final String filePath;
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private FileChannel channel;
+    private int numNodes;
+    private int numEdges;
+    private int[] edgeTargets;
+    private int[] edgeWeights;
+    private byte[] edgeSpeeds;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int[] offsetArray;
+
+    ParallelGraphParser(String filePath) {
+        this.filePath = filePath;
+    }
+
+    Graph parse() throws InvalidGraphException {
+        try (var channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            this.channel = channel;
+            return buildGraph();
+        } catch (IOException | RuntimeException e) {
+            var message = String.format("Could not parse file %s", filePath);
+            throw new InvalidGraphException(message, e);
+        }
+    }
+
+    private Graph buildGraph() throws IOException {
+        long bodyStart = readHeader();
+        long[] chunkStarts = splitChunks(bodyStart);
+        int numChunks = chunkStarts.length - 1;
+
+        edgeTargets = new int[numEdges];
+        edgeWeights = new int[numEdges];
+        edgeSpeeds = new byte[numEdges];
+        latitudes = new double[numNodes];
+        longitudes = new double[numNodes];
+        offsetArray = new int[numNodes + 1];
+
+        // first lines of every chunk, so nodes can be parsed before the edges
+        long[] firstLines = countLines(chunkStarts);
+        if (firstLines[numChunks] < (long) numNodes + numEdges) {
+            throw new IOException("Unexpected end of file");
+        }
+        int firstEdgeChunk = 0;
+        while (firstEdgeChunk < numChunks && firstLines[firstEdgeChunk] < numNodes) {
+            firstEdgeChunk++;
+        }
+
+        parseChunks(chunkStarts, firstLines, 0, firstEdgeChunk);
+
+        var tree = KDTree.buildAsync(latitudes, longitudes);
+
+        parseChunks(chunkStarts, firstLines, firstEdgeChunk, numChunks);
+
+        Arrays.parallelPrefix(offsetArray, 0, numNodes, Integer::sum);
+        System.arraycopy(offsetArray, 0, offsetArray, 1, numNodes);
+        offsetArray[0] = 0;
+        offsetArray[numNodes] = numEdges;
+
+        return new Graph(
+                offsetArray, edgeTargets, edgeWeights, edgeSpeeds, latitudes, longitudes, tree.join(), null, null);
+    }
+
+    /**
+     * Skips the header, reads the number of nodes and edges and returns the position of the first
+     * node line.
+     */
+    private long readHeader() throws IOException {
+        byte[] header = new byte[(int) Math.min(channel.size(), 1 << 16)];
+        read(header, 0, header.length);
+
+        int position = 0;
+        for (int i = 0; i < 5; i++) {
+            position = nextLine(header, position, header.length);
+        }
+        int numNodesEnd = nextLine(header, position, header.length);
+        numNodes = Integer.parseInt(line(header, position, numNodesEnd));
+        int numEdgesEnd = nextLine(header, numNodesEnd, header.length);
+        numEdges = Integer.parseInt(line(header, numNodesEnd, numEdgesEnd));
+        return numEdgesEnd;
+    }
+
+    private static String line(byte[] bytes, int start, int nextLine) {
+        int end = nextLine;
+        while (end > start && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r')) {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Splits the body into chunks of about CHUNK_SIZE bytes that start at the beginning of a line.
+     */
+    private long[] splitChunks(long bodyStart) throws IOException {
+        long size = channel.size();
+        int numNominal = (int) Math.max(1, (size - bodyStart + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        long[] starts = IntStream.range(0, numNominal + 1)
+                .parallel()
+                .mapToLong(i -> {
+                    if (i == 0) {
+                        return bodyStart;
+                    }
+                    if (i == numNominal) {
+                        return size;
+                    }
+                    return lineStartAfter(bodyStart + (long) i * CHUNK_SIZE);
+                })
+                .toArray();
+
+        // chunks without a line start are merged into their predecessor
+        return Arrays.stream(starts).distinct().sorted().toArray();
+    }
+
+    private long lineStartAfter(long position) {
+        byte[] buffer = new byte[4096];
+        try {
+            long size = channel.size();
+            while (position < size) {
+                int length = (int) Math.min(buffer.length, size - position);
+                read(buffer, position - 1, length);
+                for (int i = 0; i < length; i++) {
+                    if (buffer[i] == '\n') {
+                        return position + i;
+                    }
+                }
+                position += length;
+            }
+            return size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the global index of the first line of every chunk, followed by the total line count
+     */
+    private long[] countLines(long[] chunkStarts) {
+        int numChunks = chunkStarts.length - 1;
+        long[] lines = new long[numChunks + 1];
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            int length = (int) (chunkStarts[chunk + 1] - chunkStarts[chunk]);
+            byte[] bytes = readChunk(chunkStarts[chunk], length);
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    count++;
+                }
+            }
+            if (length > 0 && bytes[length - 1] != '\n') {
+                count++;
+            }
+            lines[chunk + 1] = count;
+        });
+        Arrays.parallelPrefix(lines, Long::sum);
+        return lines;
+    }
+
+    private void parseChunks(long[] chunkStarts, long[] firstLines, int fromChunk, int toChunk) {
+        IntStream.range(fromChunk, toChunk).parallel().forEach(chunk -> {
+            int length = (int) (chunkStarts[chunk + 1] - chunkStarts[chunk]);
+            parseChunk(readChunk(chunkStarts[chunk], length), length, firstLines[chunk]);
+        });
+    }
+
+    private void parseChunk(byte[] bytes, int length, long firstLine) {
+        int position = 0;
+        long line = firstLine;
+
+        while (position < length && line < numNodes) {
+            int node = (int) line;
+            position = skipField(bytes, position);
+            position = skipField(bytes, position);
+            latitudes[node] = parseDouble(bytes, position);
+            position = skipField(bytes, position);
+            longitudes[node] = parseDouble(bytes, position);
+            position = nextLine(bytes, position, length);
+            line++;
+        }
+
+        int runSource = -1;
+        int runLength = 0;
+        while (position < length && line < (long) numNodes + numEdges) {
+            int edge = (int) (line - numNodes);
+            int source = parseInt(bytes, position);
+            position = skipField(bytes, position);
+            edgeTargets[edge] = parseInt(bytes, position);
+            position = skipField(bytes, position);
+            edgeWeights[edge] = parseInt(bytes, position);
+            edgeSpeeds[edge] = parseSpeed(bytes, position);
+            position = nextLine(bytes, position, length);
+            line++;
+
+            // edges of a node are usually consecutive, so count them in runs
+            if (source != runSource) {
+                if (runLength > 0) {
+                    COUNTS.getAndAdd(offsetArray, runSource, runLength);
+                }
+                runSource = source;
+                runLength = 0;
+            }
+            runLength++;
+        }
+        if (runLength > 0) {
+            COUNTS.getAndAdd(offsetArray, runSource, runLength);
+        }
+    }
+
+    /**
+     * Reads a chunk into the buffer of the current thread, terminated by an additional newline so
+     * that a missing newline at the end of the file needs no special handling.
+     */
+    private byte[] readChunk(long position, int length) {
+        byte[] buffer = buffers.get();
+        if (buffer.length < length + 1) {
+            buffer = new byte[length + 1];
+            buffers.set(buffer);
+        }
+        try {
+            read(buffer, position, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer[length] = '\n';
+        return buffer;
+    }
+
+    private void read(byte[] buffer, long position, int length) throws IOException {
+        var target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static int nextLine(byte[] bytes, int position, int length) {
+        while (position < length && bytes[position] != '\n') {
+            position++;
+        }
+        return position + 1;
+    }
+
+    /**
+     * @return the position of the field following the one at position
+     */
+    private static int skipField(byte[] bytes, int position) {
+        while (bytes[position] != ' ') {
+            if (bytes[position] == '\n') {
+                throw new NumberFormatException("Missing field at byte " + position);
+            }
+            position++;
+        }
+        return position + 1;
+    }
+
+    /**
+     * @return the maxspeed two fields after the weight at position, 0 if the line ends before
+     */
+    private static byte parseSpeed(byte[] bytes, int position) {
+        for (int field = 0; field < 2; field++) {
+            while (bytes[position] != ' ') {
+                if (bytes[position] == '\n' || bytes[position] == '\r') {
+                    return 0;
+                }
+                position++;
+            }
+            position++;
+        }
+        return Profile.speed(parseInt(bytes, position));
+    }
+
+    private static int parseInt(byte[] bytes, int position) {
+        boolean negative = bytes[position] == '-';
+        if (negative) {
+            position++;
+        }
+        int start = position;
+        long value = 0;
+        while (bytes[position] >= '0' && bytes[position] <= '9' && position - start < 10) {
+            value = 10 * value + (bytes[position++] - '0');
+        }
+        value = negative ? -value : value;
+        boolean terminated = bytes[position] == ' ' || bytes[position] == '\n' || bytes[position] == '\r';
+        if (position == start || !terminated || value != (int) value) {
+            throw new NumberFormatException("Invalid integer at byte " + start);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with at most 15 digits and a small exponent are exactly
+     * representable as mantissa and power of ten, so a single correctly rounded division or
+     * multiplication gives the same result as {@link Double#parseDouble(String)}. Everything else
+     * falls back to it.
+     */
+    private static double parseDouble(byte[] bytes, int position) {
+        int start = position;
+        boolean negative = bytes[position] == '-';
+        if (negative || bytes[position] == '+') {
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        while (bytes[position] >= '0' && bytes[position] <= '9' && digits <= 15) {
+            mantissa = 10 * mantissa + (bytes[position++] - '0');
+            digits++;
+        }
+        if (bytes[position] == '.') {
+            position++;
+            while (bytes[position] >= '0' && bytes[position] <= '9' && digits <= 15) {
+                mantissa = 10 * mantissa + (bytes[position++] - '0');
+                digits++;
+                exponent--;
+            }
+        }
+
+        boolean terminated = bytes[position] == ' ' || bytes[position] == '\n' || bytes[position] == '\r';
+        if (digits == 0 || digits > 15 || !terminated) {
+            return slowParseDouble(bytes, start);
+        }
+
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static double slowParseDouble(byte[] bytes, int start) {
+        int end = start;
+        while (bytes[end] != ' ' && bytes[end] != '\n' && bytes[end] != '\r') {
+            end++;
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,77 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.List;
+
+/**
+ * One-to-one shortest path query on a {@link Graph}. Finders hold pooled search arrays, which are
+ * handed back by {@link #close()}.
+ */
+public interface PathFinder extends AutoCloseable {
+
+    /**
+     * @return the length of the shortest path from start to target, or -1 if target is unreachable
+     */
+    int getShortestPath(int start, int target);
+
+    /**
+     * Searches from the point of start to the point of target, leaving and entering their edges
+     * at the split weights given by {@link Snap}.
+     *
+     * @return the length of the shortest path between the points, or -1 if target is unreachable.
+     *     The nodes it passes, without the points themselves, are returned by
+     *     {@link #getPathNodes()}, none if it stays on the edge of both.
+     */
+    int getShortestPath(Snap start, Snap target);
+
+    /**
+     * Like {@link #getShortestPath(int, int)} on the weights of profile. Only
+     * {@link ClosestPathFinder} supports other profiles than the default.
+     *
+     * @throws IllegalArgumentException if the weights of profile were not computed
+     */
+    default int getShortestPath(int start, int target, Profile profile) {
+        requireDefault(profile);
+        return getShortestPath(start, target);
+    }
+
+    /**
+     * Like {@link #getShortestPath(Snap, Snap)} on the weights of profile. Only
+     * {@link ClosestPathFinder} supports other profiles than the default.
+     *
+     * @throws IllegalArgumentException if the weights of profile were not computed
+     */
+    default int getShortestPath(Snap start, Snap target, Profile profile) {
+        requireDefault(profile);
+        return getShortestPath(start, target);
+    }
+
+    private void requireDefault(Profile profile) {
+        if (profile != Profile.DEFAULT) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " searches the default profile only");
+        }
+    }
+
+    /**
+     * @return the nodes of the path found by the last query, from start to target
+     */
+    List<double[]> getPath();
+
+    /**
+     * @return the ids of the nodes of the path found by the last query, from start to target
+     */
+    int[] getPathNodes();
+
+    /**
+     * @return the number of nodes settled by the last query
+     */
+    int getSettledNodes();
+
+    /**
+     * Makes following queries throw a {@link SearchTimeoutException} once {@link System#nanoTime()}
+     * passes the given deadline.
+     */
+    void setDeadline(long deadlineNanos);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,49 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe pool of expensive objects like search states. Objects are reused in LIFO order to
+ * keep recently used memory hot in the cache. At most maxIdle objects are kept, further released
+ * objects are left to the garbage collector, so maxIdle should be the number of threads using the
+ * pool.
+ */
+class Pool<T> {
+
+    private final ConcurrentLinkedDeque<T> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final Supplier<T> factory;
+    private volatile int maxIdle;
+
+    Pool(Supplier<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Changes the number of idle objects kept from now on. Objects beyond it are dropped once
+     * acquired again.
+     */
+    void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    T acquire() {
+        T object = idle.pollFirst();
+        if (object == null) {
+            return factory.get();
+        }
+        idleCount.decrementAndGet();
+        return object;
+    }
+
+    void release(T object) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        idle.offerFirst(object);
+    }
+}
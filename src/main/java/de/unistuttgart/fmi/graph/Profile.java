@@ -0,0 +1,63 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Locale;
+
+/**
+ * Metric minimized by a search. Besides the weights of the .fmi file, the graph can hold one weight
+ * array per profile over the same edges, computed by {@link Graph#computeProfile(Profile)} from the
+ * coordinates of the nodes and the maxspeed column of the edges.
+ *
+ * Durations are in tenths of a second, so short edges are not rounded to zero.
+ */
+public enum Profile {
+    /** the weights of the .fmi file */
+    DEFAULT,
+    /** the great circle length of the edges in meters */
+    DISTANCE,
+    /** the travel time at the maxspeed of the edges */
+    TIME,
+    /** the travel time at the maxspeed of the edges, at most {@link #TRUCK_SPEED} */
+    TRUCK;
+
+    /** speed in km/h of edges without a maxspeed */
+    static final int DEFAULT_SPEED = 50;
+    /** maximum speed of trucks in km/h */
+    static final int TRUCK_SPEED = 80;
+
+    /**
+     * @return the weight of an edge under this profile, other than {@link #DEFAULT}
+     * @param meters the length of the edge
+     * @param speed the maxspeed of the edge in km/h, 0 if unknown
+     */
+    int weight(double meters, int speed) {
+        if (speed == 0) {
+            speed = DEFAULT_SPEED;
+        }
+        return switch (this) {
+            case DISTANCE -> (int) Math.round(meters);
+            case TIME -> (int) Math.round(meters * 36 / speed);
+            case TRUCK -> (int) Math.round(meters * 36 / Math.min(speed, TRUCK_SPEED));
+            case DEFAULT -> throw new IllegalStateException("the default weights are loaded, not computed");
+        };
+    }
+
+    /**
+     * @return the maxspeed column of an edge stored in a byte, as its unsigned value clamped to
+     *     255 km/h
+     */
+    static byte speed(int maxspeed) {
+        return (byte) Math.clamp(maxspeed, 0, 255);
+    }
+
+    /**
+     * @return the profile of the given name, ignoring case
+     * @throws IllegalArgumentException if there is no profile of that name
+     */
+    public static Profile of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown profile " + name, e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+
+/**
+ * 4-ary minHeap over node ids. The key of every entry is copied next to it into the heap, so
+ * sifting compares keys without reading the key array, and the four children of an entry share a
+ * cache line. The tree is half as deep as a binary heap.
+ */
+class QuaternaryHeap implements NodeQueue {
+
+    private final int[] heapNodes;
+    private final int[] heapKeys;
+    private final int[] indices;
+    private final int[] keys;
+    private int size;
+
+    QuaternaryHeap(int capacity, int[] keys) {
+        this.heapNodes = new int[capacity];
+        this.heapKeys = new int[capacity];
+        this.indices = new int[capacity];
+        this.keys = keys;
+        Arrays.fill(indices, -1);
+    }
+
+    @Override
+    public void update(int node) {
+        int index = indices[node];
+        int key = keys[node];
+        if (index == -1) {
+            siftUp(size++, node, key);
+        } else if (key < heapKeys[index]) {
+            siftUp(index, node, key);
+        } else {
+            siftDown(index, node, key);
+        }
+    }
+
+    @Override
+    public int peek() {
+        return heapNodes[0];
+    }
+
+    @Override
+    public int poll() {
+        int result = heapNodes[0];
+        indices[result] = -1;
+        size--;
+        if (size > 0) {
+            siftDown(0, heapNodes[size], heapKeys[size]);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            indices[heapNodes[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Moves the hole at index up until node with the given key fits into it.
+     */
+    private void siftUp(int index, int node, int key) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 2;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            move(parent, index);
+            index = parent;
+        }
+        set(index, node, key);
+    }
+
+    /**
+     * Moves the hole at index down until node with the given key fits into it.
+     */
+    private void siftDown(int index, int node, int key) {
+        while (true) {
+            int firstChild = 4 * index + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + 4, size);
+            int smallest = firstChild;
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (heapKeys[child] < heapKeys[smallest]) {
+                    smallest = child;
+                }
+            }
+            if (heapKeys[smallest] >= key) {
+                break;
+            }
+            move(smallest, index);
+            index = smallest;
+        }
+        set(index, node, key);
+    }
+
+    private void move(int from, int to) {
+        heapNodes[to] = heapNodes[from];
+        heapKeys[to] = heapKeys[from];
+        indices[heapNodes[to]] = to;
+    }
+
+    private void set(int index, int node, int key) {
+        heapNodes[index] = node;
+        heapKeys[index] = key;
+        indices[node] = index;
+    }
+}
@@ -0,0 +1,26 @@
+package de.unistuttgart.fmi.graph;
+
+/**
+ * Priority queue implementations for the search of a {@link ClosestPathFinder}.
+ */
+public enum QueueType {
+    /** binary heap comparing through the key array */
+    BINARY,
+    /** 4-ary heap keeping a copy of the keys next to the nodes */
+    QUATERNARY,
+    /**
+     * radix heap, which needs the keys taken from the queue to never decrease, as in Dijkstra's
+     * algorithm and A* with consistent bounds
+     */
+    RADIX;
+
+    static final QueueType DEFAULT = QUATERNARY;
+
+    NodeQueue create(int capacity, int[] keys) {
+        return switch (this) {
+            case BINARY -> new IndexedHeap(capacity, keys);
+            case QUATERNARY -> new QuaternaryHeap(capacity, keys);
+            case RADIX -> new RadixHeap(capacity, keys);
+        };
+    }
+}
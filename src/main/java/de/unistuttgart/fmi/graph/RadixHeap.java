@@ -0,0 +1,129 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+
+/**
+ * Monotone radix heap over node ids. Bucket 0 holds the nodes whose key equals the last key
+ * taken from the queue, bucket i > 0 those whose key first differs from it in bit i - 1. Once
+ * bucket 0 is empty, the smallest non-empty bucket is redistributed around its minimum, which
+ * moves every node at most 32 times until it is taken.
+ *
+ * Keys must not be smaller than the last key taken from the queue. A node is moved to its new
+ * bucket when its key decreases, so the buckets never contain outdated entries.
+ */
+class RadixHeap implements NodeQueue {
+
+    private static final int NUM_BUCKETS = 33;
+
+    private final int[][] buckets = new int[NUM_BUCKETS][];
+    private final int[] bucketSizes = new int[NUM_BUCKETS];
+    private final int[] bucketOf;
+    private final int[] indices;
+    private final int[] keys;
+    private int last;
+    private int size;
+
+    RadixHeap(int capacity, int[] keys) {
+        this.bucketOf = new int[capacity];
+        this.indices = new int[capacity];
+        this.keys = keys;
+        Arrays.fill(indices, -1);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new int[16];
+        }
+    }
+
+    @Override
+    public void update(int node) {
+        int bucket = bucketFor(keys[node]);
+        if (indices[node] == -1) {
+            size++;
+        } else if (bucketOf[node] == bucket) {
+            return;
+        } else {
+            remove(node);
+        }
+        add(bucket, node);
+    }
+
+    @Override
+    public int peek() {
+        fillFirstBucket();
+        return buckets[0][bucketSizes[0] - 1];
+    }
+
+    @Override
+    public int poll() {
+        fillFirstBucket();
+        int node = buckets[0][--bucketSizes[0]];
+        indices[node] = -1;
+        size--;
+        return node;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+            for (int i = 0; i < bucketSizes[bucket]; i++) {
+                indices[buckets[bucket][i]] = -1;
+            }
+            bucketSizes[bucket] = 0;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    private int bucketFor(int key) {
+        return key == last ? 0 : 32 - Integer.numberOfLeadingZeros(key ^ last);
+    }
+
+    /**
+     * Redistributes the smallest non-empty bucket around its minimum if bucket 0 is empty.
+     */
+    private void fillFirstBucket() {
+        if (bucketSizes[0] > 0) {
+            return;
+        }
+        int bucket = 1;
+        while (bucketSizes[bucket] == 0) {
+            bucket++;
+        }
+
+        int[] nodes = buckets[bucket];
+        int count = bucketSizes[bucket];
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, keys[nodes[i]]);
+        }
+        last = min;
+
+        // all nodes of the bucket move to smaller buckets, so the array is not reused meanwhile
+        bucketSizes[bucket] = 0;
+        for (int i = 0; i < count; i++) {
+            add(bucketFor(keys[nodes[i]]), nodes[i]);
+        }
+    }
+
+    private void add(int bucket, int node) {
+        if (bucketSizes[bucket] == buckets[bucket].length) {
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], 2 * buckets[bucket].length);
+        }
+        int index = bucketSizes[bucket]++;
+        buckets[bucket][index] = node;
+        bucketOf[node] = bucket;
+        indices[node] = index;
+    }
+
+    private void remove(int node) {
+        int bucket = bucketOf[node];
+        int index = indices[node];
+        int lastNode = buckets[bucket][--bucketSizes[bucket]];
+        buckets[bucket][index] = lastNode;
+        indices[lastNode] = index;
+    }
+}
@@ -0,0 +1,129 @@
+package de.unistuttgart.fmi.graph;
+
+import java.util.Arrays;
+
+/**
+ * Reusable arrays of a single Dijkstra search. Only the nodes reached by a search are reset
+ * before the next one, so a short search costs time proportional to the nodes it touched.
+ *
+ * Goal-directed searches order the queue by an estimate of the total path length instead of the
+ * distance. Their estimates and queue are allocated on first use, like the marks of
+ * {@link DeltaStepping}.
+ */
+class SearchState {
+
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    final int[] distances;
+    final int[] predecessors;
+    final QueueType queueType;
+    final NodeQueue queue;
+    private final int[] touched;
+    private int touchedCount;
+    int[] estimates;
+    private NodeQueue estimateQueue;
+    private int[] marks;
+    private int mark;
+
+    SearchState(int numNodes, QueueType queueType) {
+        this.queueType = queueType;
+        this.distances = new int[numNodes];
+        this.predecessors = new int[numNodes];
+        this.touched = new int[numNodes];
+        this.queue = queueType.create(numNodes, distances);
+        Arrays.fill(distances, INFINITY);
+    }
+
+    void reset() {
+        for (int i = 0; i < touchedCount; i++) {
+            distances[touched[i]] = INFINITY;
+        }
+        touchedCount = 0;
+        queue.clear();
+        if (estimateQueue != null) {
+            estimateQueue.clear();
+        }
+    }
+
+    /**
+     * @return the queue sorted by the estimates given to {@link #update(int, int, int, int)}
+     */
+    NodeQueue estimateQueue() {
+        if (estimateQueue == null) {
+            estimates = new int[distances.length];
+            estimateQueue = queueType.create(distances.length, estimates);
+        }
+        return estimateQueue;
+    }
+
+    /**
+     * @return per node marks that are all different from the value returned by {@link #nextMark()}
+     *     until it is called again
+     */
+    int[] marks() {
+        if (marks == null) {
+            marks = new int[distances.length];
+        }
+        return marks;
+    }
+
+    int nextMark() {
+        if (++mark == Integer.MAX_VALUE) {
+            Arrays.fill(marks(), 0);
+            mark = 1;
+        }
+        return mark;
+    }
+
+    /**
+     * Records that a search writing the distances directly reached node, so it is reset before the
+     * next search.
+     */
+    void touch(int node) {
+        touched[touchedCount++] = node;
+    }
+
+    /**
+     * @return the nodes reached by the last search
+     */
+    int[] reached() {
+        return Arrays.copyOf(touched, touchedCount);
+    }
+
+    int getTouchedCount() {
+        return touchedCount;
+    }
+
+    /**
+     * @return the i-th node reached by the last search, in the order they were reached
+     */
+    int getTouched(int i) {
+        return touched[i];
+    }
+
+    /**
+     * Sets the tentative distance of node and adds it to the queue or moves it up.
+     */
+    void update(int node, int distance, int predecessor) {
+        if (distances[node] == INFINITY) {
+            touched[touchedCount++] = node;
+        }
+        distances[node] = distance;
+        predecessors[node] = predecessor;
+        queue.update(node);
+    }
+
+    /**
+     * Sets the tentative distance and estimate of node and adds it to the estimate queue or moves
+     * it up.
+     */
+    void update(int node, int distance, int predecessor, int estimate) {
+        if (distances[node] == INFINITY) {
+            touched[touchedCount++] = node;
+        }
+        distances[node] = distance;
+        predecessors[node] = predecessor;
+        estimates[node] = estimate;
+        estimateQueue.update(node);
+    }
+}
@@ -0,0 +1,13 @@
+package de.unistuttgart.fmi.graph;
+
+/**
+ * Thrown by a path finder when a query runs past its deadline. The finder stays usable.
+ */
+public class SearchTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SearchTimeoutException() {
+        super("Search exceeded its deadline");
+    }
+}
@@ -0,0 +1,81 @@
+package de.unistuttgart.fmi.graph;
+
+/**
+ * A point on the edge between two nodes, such as a coordinate snapped to the nearest road by
+ * {@link Graph#snap(double, double, int)}. Searches from or to a snap start or end at this
+ * phantom node between the two nodes, with the weights of the edge split at its position.
+ *
+ * A snap of a single node, from {@link Graph#snap(int)}, has the node as source and target.
+ *
+ * @param source .fmi id of the node at fraction 0
+ * @param target .fmi id of the node at fraction 1
+ * @param fraction position of the point between source and target
+ * @param forwardWeight weight of the edge from source to target, -1 if there is none
+ * @param backwardWeight weight of the edge from target to source, -1 if there is none
+ * @param latitude latitude of the point
+ * @param longitude longitude of the point
+ * @param distance great circle distance in kilometers from the snapped coordinates to the point
+ */
+public record Snap(
+        int source,
+        int target,
+        double fraction,
+        int forwardWeight,
+        int backwardWeight,
+        double latitude,
+        double longitude,
+        double distance) {
+
+    /**
+     * @return the weight from the point to source, -1 if the edge can not be taken that way
+     */
+    int toSource() {
+        return fraction == 0 ? 0 : part(fraction, backwardWeight);
+    }
+
+    /**
+     * @return the weight from the point to target, -1 if the edge can not be taken that way
+     */
+    int toTarget() {
+        return fraction == 1 ? 0 : part(1 - fraction, forwardWeight);
+    }
+
+    /**
+     * @return the weight from source to the point, -1 if the edge can not be taken that way
+     */
+    int fromSource() {
+        return fraction == 0 ? 0 : part(fraction, forwardWeight);
+    }
+
+    /**
+     * @return the weight from target to the point, -1 if the edge can not be taken that way
+     */
+    int fromTarget() {
+        return fraction == 1 ? 0 : part(1 - fraction, backwardWeight);
+    }
+
+    /**
+     * @return the weight from this point to end along their common edge, or -1 if they are on
+     *     different edges or end lies behind this point on a one-way edge
+     */
+    int along(Snap end) {
+        double endFraction;
+        if (end.source == source && end.target == target) {
+            endFraction = end.fraction;
+        } else if (end.source == target && end.target == source) {
+            endFraction = 1 - end.fraction;
+        } else {
+            return -1;
+        }
+        if (endFraction == fraction) {
+            return 0;
+        }
+        return endFraction > fraction
+                ? part(endFraction - fraction, forwardWeight)
+                : part(fraction - endFraction, backwardWeight);
+    }
+
+    private static int part(double fraction, int weight) {
+        return weight == -1 ? -1 : (int) Math.round(fraction * weight);
+    }
+}
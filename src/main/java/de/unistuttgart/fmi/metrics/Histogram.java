@@ -0,0 +1,115 @@
+package de.unistuttgart.fmi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values from 2^minExponent to 2^maxExponent in log-linear buckets like
+ * an HdrHistogram: every power of two is split into {@link #SUB_BUCKETS} buckets of equal width.
+ * Every bucket is a {@link LongAdder}, so concurrent recording does not contend on a single
+ * counter.
+ *
+ * A value read back from its bucket is at most 1 / {@link #SUB_BUCKETS} = 12.5% above the
+ * recorded one, about one significant decimal digit, at a fixed cost of one counter per bucket.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    /** buckets per power of two */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final int minExponent;
+    private final int maxExponent;
+    private final double scale;
+    // bucket 0 counts the values up to 2^minExponent, the last one all values above 2^maxExponent
+    // and the ones between split (2^(e - 1), 2^e] into SUB_BUCKETS for every exponent e
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param scale factor from recorded values to exported ones, e.g. 1e-9 for nanoseconds
+     *     exported as seconds
+     */
+    public Histogram(int minExponent, int maxExponent, double scale) {
+        this.minExponent = minExponent;
+        this.maxExponent = maxExponent;
+        this.scale = scale;
+        this.buckets = new LongAdder[(maxExponent - minExponent) * SUB_BUCKETS + 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        buckets[bucket(value)].increment();
+        sum.add(value);
+    }
+
+    private int bucket(long value) {
+        // smallest exponent e with value <= 2^e
+        int exponent = value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+        if (exponent <= minExponent) {
+            return 0;
+        }
+        if (exponent > maxExponent) {
+            return buckets.length - 1;
+        }
+        // the offset above 2^(e - 1) in units of 2^(e - 1) / SUB_BUCKETS, rounded up, minus one
+        long offset = value - (1L << (exponent - 1));
+        int subBucket = (int) (((offset << SUB_BUCKET_BITS) - 1) >> (exponent - 1));
+        return 1 + (exponent - minExponent - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    int getBucketCount() {
+        return buckets.length - 1;
+    }
+
+    /**
+     * @return the exported upper bound of bucket i
+     */
+    double getUpperBound(int i) {
+        if (i == 0) {
+            return Math.scalb(1.0, minExponent) * scale;
+        }
+        int exponent = minExponent + 1 + (i - 1) / SUB_BUCKETS;
+        int subBucket = (i - 1) % SUB_BUCKETS;
+        return Math.scalb(1.0 + (subBucket + 1.0) / SUB_BUCKETS, exponent - 1) * scale;
+    }
+
+    /**
+     * @return the number of values in bucket i, where i = {@link #getBucketCount()} holds the
+     *     values above the last bound
+     */
+    long getCount(int i) {
+        return buckets[i].sum();
+    }
+
+    /**
+     * @return the exported upper bound of the bucket holding the value at the given quantile,
+     *     e.g. 0.99 for the 99th percentile, or 0 if nothing was recorded. Values above
+     *     2^maxExponent are reported as 2^maxExponent.
+     */
+    public double getValueAtQuantile(double quantile) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < getBucketCount(); i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return Math.scalb(1.0, maxExponent) * scale;
+    }
+
+    double getSum() {
+        return sum.sum() * scale;
+    }
+}
@@ -0,0 +1,120 @@
+package de.unistuttgart.fmi.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of counters, gauges and histograms, written in the Prometheus text format
+ * by {@link #write(Writer)}.
+ *
+ * A metric is identified by its name and labels, e.g. {@code endpoint="/path"}, and created on
+ * first use. Callers keep the returned counter or histogram in a field, so recording is a single
+ * {@link LongAdder} update without any lookup.
+ */
+public final class Metrics {
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    /**
+     * @return the counter with the given name and labels
+     */
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").metrics.computeIfAbsent(labels, l -> new LongAdder());
+    }
+
+    /**
+     * Registers a counter whose value is read from elsewhere when written.
+     */
+    public static void counter(String name, String help, LongSupplier value) {
+        family(name, help, "counter").metrics.put("", value);
+    }
+
+    /**
+     * Registers a gauge whose value is read when written.
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        family(name, help, "gauge").metrics.put("", value);
+    }
+
+    /**
+     * @return a histogram of durations recorded in nanoseconds and exported in seconds, from 1us
+     *     to 34s
+     */
+    public static Histogram latency(String name, String help, String labels) {
+        return histogram(name, help, labels, 10, 35, 1e-9);
+    }
+
+    /**
+     * @return a histogram of counts, e.g. settled nodes, from 1 to 2^maxExponent
+     */
+    public static Histogram sizes(String name, String help, String labels, int maxExponent) {
+        return histogram(name, help, labels, 0, maxExponent, 1);
+    }
+
+    private static Histogram histogram(
+            String name, String help, String labels, int minExponent, int maxExponent, double scale) {
+        return (Histogram) family(name, help, "histogram")
+                .metrics
+                .computeIfAbsent(labels, l -> new Histogram(minExponent, maxExponent, scale));
+    }
+
+    private static Family family(String name, String help, String type) {
+        return FAMILIES.computeIfAbsent(name, n -> new Family(help, type));
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     */
+    public static void write(Writer writer) throws IOException {
+        for (var family : FAMILIES.entrySet()) {
+            String name = family.getKey();
+            writer.write("# HELP " + name + " " + family.getValue().help + "\n");
+            writer.write("# TYPE " + name + " " + family.getValue().type + "\n");
+            for (var metric : family.getValue().metrics.entrySet()) {
+                String labels = metric.getKey();
+                switch (metric.getValue()) {
+                    case LongAdder counter -> writeSample(writer, name, labels, counter.sum());
+                    case LongSupplier supplier -> writeSample(writer, name, labels, supplier.getAsLong());
+                    case Histogram histogram -> writeHistogram(writer, name, labels, histogram);
+                    default -> throw new IllegalStateException("unknown metric " + metric.getValue());
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels, Histogram histogram)
+            throws IOException {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long count = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            count += histogram.getCount(i);
+            String bound = String.format(Locale.US, "%.9g", histogram.getUpperBound(i));
+            writeSample(writer, name + "_bucket", prefix + "le=\"" + bound + "\"", count);
+        }
+        count += histogram.getCount(histogram.getBucketCount());
+        writeSample(writer, name + "_bucket", prefix + "le=\"+Inf\"", count);
+        writer.write(name + "_sum" + (labels.isEmpty() ? "" : "{" + labels + "}") + " "
+                + String.format(Locale.US, "%.9g", histogram.getSum()) + "\n");
+        writeSample(writer, name + "_count", labels, count);
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, long value) throws IOException {
+        writer.write(name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + value + "\n");
+    }
+
+    /**
+     * The metrics of one name by their labels.
+     */
+    private record Family(String help, String type, Map<String, Object> metrics) {
+        Family(String help, String type) {
+            this(help, type, new ConcurrentSkipListMap<>());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package de.unistuttgart.fmi.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one HTTP request answered by the server.
+ */
+@Name("routeplanner.Request")
+@Label("Request")
+@Category("Routeplanner")
+@Description("HTTP request answered by the server")
+public class RequestEvent extends Event {
+
+    @Label("Endpoint")
+    public String endpoint;
+
+    @Label("Query")
+    public String query;
+
+    @Label("Status")
+    public int status;
+}
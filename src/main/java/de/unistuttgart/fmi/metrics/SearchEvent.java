@@ -0,0 +1,36 @@
+package de.unistuttgart.fmi.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one search of the kind of its {@link SearchMetrics}, e.g. Dijkstra, A* or
+ * alternative routes, recorded with e.g. {@code -XX:StartFlightRecording}.
+ */
+@Name("routeplanner.Search")
+@Label("Search")
+@Category("Routeplanner")
+@Description("Graph search such as a shortest path, one-to-all or alternative routes query")
+public class SearchEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Start")
+    public int start;
+
+    @Label("Target")
+    public int target;
+
+    @Label("Settled Nodes")
+    public int settledNodes;
+
+    @Label("Relaxed Edges")
+    public long relaxedEdges;
+
+    @Label("Queue Operations")
+    public long queueOperations;
+}
@@ -0,0 +1,54 @@
+package de.unistuttgart.fmi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one kind of search: its duration, settled nodes, relaxed edges and priority queue
+ * operations, plus a {@link SearchEvent} per search while JFR records.
+ */
+public final class SearchMetrics {
+
+    private final String kind;
+    private final Histogram duration;
+    private final Histogram settledNodes;
+    private final LongAdder relaxedEdges;
+    private final LongAdder queueOperations;
+
+    public SearchMetrics(String kind) {
+        String labels = "kind=\"" + kind + "\"";
+        this.kind = kind;
+        this.duration = Metrics.latency("routeplanner_search_duration_seconds", "Duration of searches", labels);
+        this.settledNodes = Metrics.sizes("routeplanner_search_settled_nodes", "Nodes settled per search", labels, 26);
+        this.relaxedEdges =
+                Metrics.counter("routeplanner_search_relaxed_edges_total", "Edges relaxed by searches", labels);
+        this.queueOperations = Metrics.counter(
+                "routeplanner_search_queue_operations_total", "Priority queue inserts, updates and polls", labels);
+    }
+
+    /**
+     * Records a finished search that started at {@link System#nanoTime()} startNanos. The event
+     * must have been begun at the start of the search.
+     */
+    public void record(
+            SearchEvent event,
+            long startNanos,
+            int start,
+            int target,
+            int settled,
+            long relaxed,
+            long queueOperations) {
+        duration.record(System.nanoTime() - startNanos);
+        settledNodes.record(settled);
+        relaxedEdges.add(relaxed);
+        this.queueOperations.add(queueOperations);
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.start = start;
+            event.target = target;
+            event.settledNodes = settled;
+            event.relaxedEdges = relaxed;
+            event.queueOperations = queueOperations;
+            event.commit();
+        }
+    }
+}
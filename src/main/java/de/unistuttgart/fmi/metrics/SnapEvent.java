@@ -0,0 +1,32 @@
+package de.unistuttgart.fmi.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event of one nearest neighbour or radius query on the KD-tree. Only queries of at least
+ * 100us are recorded by default, as most take a few microseconds.
+ */
+@Name("routeplanner.Snap")
+@Label("Snap")
+@Category("Routeplanner")
+@Description("Nearest neighbour or radius query of the KD-tree")
+@Threshold("100 us")
+public class SnapEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Latitude")
+    public double latitude;
+
+    @Label("Longitude")
+    public double longitude;
+
+    @Label("Visited Tree Nodes")
+    public int visitedNodes;
+}
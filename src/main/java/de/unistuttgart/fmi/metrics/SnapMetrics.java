@@ -0,0 +1,38 @@
+package de.unistuttgart.fmi.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one kind of KD-tree query: its duration and visited tree nodes, plus a
+ * {@link SnapEvent} per slow query while JFR records.
+ */
+public final class SnapMetrics {
+
+    private final String kind;
+    private final Histogram duration;
+    private final LongAdder visitedNodes;
+
+    public SnapMetrics(String kind) {
+        String labels = "kind=\"" + kind + "\"";
+        this.kind = kind;
+        this.duration = Metrics.latency("routeplanner_snap_duration_seconds", "Duration of KD-tree queries", labels);
+        this.visitedNodes =
+                Metrics.counter("routeplanner_snap_visited_nodes_total", "KD-tree nodes visited by queries", labels);
+    }
+
+    /**
+     * Records a finished query that started at {@link System#nanoTime()} startNanos. The event
+     * must have been begun at the start of the query.
+     */
+    public void record(SnapEvent event, long startNanos, double latitude, double longitude, int visited) {
+        duration.record(System.nanoTime() - startNanos);
+        visitedNodes.add(visited);
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.latitude = latitude;
+            event.longitude = longitude;
+            event.visitedNodes = visited;
+            event.commit();
+        }
+    }
+}
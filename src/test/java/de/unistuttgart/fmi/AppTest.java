@@ -0,0 +1,41 @@
+package de.unistuttgart.fmi;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.unistuttgart.fmi.graph.InvalidGraphException;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AppTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compactGraphsAreLoaded() throws IOException, InvalidGraphException {
+        String path = TestGraphs.writeGrid(directory, "grid.fmi", 10).toString();
+
+        var graph = App.load(path, new String[] {"-graph", path, "-compact"});
+
+        assertTrue(graph.isCompact());
+    }
+
+    @Test
+    void compactIsRejectedWithPreprocessing() throws IOException {
+        String path = TestGraphs.writeGrid(directory, "grid.fmi", 10).toString();
+
+        for (String[] options : new String[][] {{"-profiles", "time"}, {"-ch"}, {"-landmarks", "4"}}) {
+            String[] args = new String[options.length + 3];
+            args[0] = "-graph";
+            args[1] = path;
+            args[2] = "-compact";
+            System.arraycopy(options, 0, args, 3, options.length);
+
+            var e = assertThrows(IllegalArgumentException.class, () -> App.load(path, args));
+            assertTrue(e.getMessage().contains(options[0]), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package de.unistuttgart.fmi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import de.unistuttgart.fmi.RouteCache.Route;
+import de.unistuttgart.fmi.graph.Graph;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RouteCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private Graph oldGraph;
+    private Graph newGraph;
+
+    @BeforeEach
+    void loadGraphs() throws Exception {
+        String path = TestGraphs.writeGrid(directory, "grid.fmi", 4).toString();
+        oldGraph = Graph.from(path);
+        newGraph = Graph.from(path);
+    }
+
+    @Test
+    void requestsOnAnOldGraphBypassTheCache() {
+        var cache = new RouteCache(1000);
+        cache.reset(newGraph);
+        var searches = new AtomicInteger();
+        Route route = new Route(1, new int[] {0, 1});
+
+        cache.get(newGraph, 0, 1, () -> {
+            searches.incrementAndGet();
+            return route;
+        });
+        // a request still running on the old graph neither replaces nor clears the cache
+        cache.get(oldGraph, 0, 1, () -> {
+            searches.incrementAndGet();
+            return new Route(2, new int[] {0, 4, 1});
+        });
+        assertSame(route, cache.get(newGraph, 0, 1, () -> {
+            searches.incrementAndGet();
+            return null;
+        }));
+        assertEquals(2, searches.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void searchesOnThePreviousGraphAreNotJoined() throws Exception {
+        var cache = new RouteCache(1000);
+        cache.reset(oldGraph);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        Route stale = new Route(1, new int[] {0, 1});
+        var running = CompletableFuture.supplyAsync(() -> cache.get(oldGraph, 0, 1, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return stale;
+        }));
+        started.await();
+
+        cache.reset(newGraph);
+        Route fresh = new Route(3, new int[] {0, 2, 1});
+        assertSame(fresh, cache.get(newGraph, 0, 1, () -> fresh));
+
+        release.countDown();
+        assertSame(stale, running.get());
+        // the stale route was found on the old graph and is not cached for the new one
+        assertSame(fresh, cache.get(newGraph, 0, 1, () -> null));
+    }
+}
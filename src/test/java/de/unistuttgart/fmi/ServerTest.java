@@ -0,0 +1,74 @@
+package de.unistuttgart.fmi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.unistuttgart.fmi.graph.Graph;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ServerTest {
+
+    @TempDir
+    Path directory;
+
+    private Path graphFile;
+    private final List<String> loaded = new CopyOnWriteArrayList<>();
+    private final CountDownLatch reloaded = new CountDownLatch(1);
+    private Server server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        graphFile = TestGraphs.writeGrid(directory, "grid.fmi", 4);
+        server = new Server(Graph.from(graphFile.toString()), ServerConfig.defaults(), graphFile.toString(), path -> {
+            loaded.add(path);
+            reloaded.countDown();
+            return Graph.from(path);
+        });
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    void reloadRejectsOtherFiles() throws Exception {
+        Path otherFile = TestGraphs.writeGrid(directory, "other.fmi", 4);
+
+        assertEquals(400, reload(otherFile.toString()));
+        assertEquals(400, reload(directory.resolve("missing.fmi").toString()));
+        assertTrue(loaded.isEmpty());
+    }
+
+    @Test
+    void reloadAcceptsTheGraphFile() throws Exception {
+        assertEquals(202, reload(directory.resolve(".").resolve("grid.fmi").toString()));
+
+        assertTrue(reloaded.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(graphFile.toString()), loaded);
+    }
+
+    private static int reload(String path) throws Exception {
+        var uri = URI.create("http://127.0.0.1:8080/reload?graph=" + URLEncoder.encode(path, StandardCharsets.UTF_8));
+        try (var client = HttpClient.newHttpClient()) {
+            var request = HttpRequest.newBuilder(uri)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+    }
+}
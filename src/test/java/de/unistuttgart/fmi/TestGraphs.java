@@ -0,0 +1,55 @@
+package de.unistuttgart.fmi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Small .fmi files for tests.
+ */
+final class TestGraphs {
+
+    private TestGraphs() {}
+
+    /**
+     * Writes a grid of size x size nodes near Stuttgart, with edges of weight 100 in both
+     * directions between neighbours, to name in directory.
+     *
+     * @return the path of the file
+     */
+    static Path writeGrid(Path directory, String name, int size) throws IOException {
+        var builder = new StringBuilder("# Id : test\n# Timestamp : 1\n# Type: maxspeed\n# Revision: 1\n\n");
+        int numEdges = 4 * size * (size - 1);
+        builder.append(size * size).append('\n').append(numEdges).append('\n');
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int id = row * size + column;
+                builder.append(id)
+                        .append(' ')
+                        .append(id)
+                        .append(' ')
+                        .append(48.7 + 0.001 * row)
+                        .append(' ')
+                        .append(9.1 + 0.001 * column)
+                        .append(" 0\n");
+            }
+        }
+        // edges sorted by source, as in .fmi files
+        for (int id = 0; id < size * size; id++) {
+            int row = id / size;
+            int column = id % size;
+            int[][] neighbours = {{row - 1, column}, {row, column - 1}, {row, column + 1}, {row + 1, column}};
+            for (int[] neighbour : neighbours) {
+                if (neighbour[0] >= 0 && neighbour[0] < size && neighbour[1] >= 0 && neighbour[1] < size) {
+                    builder.append(id)
+                            .append(' ')
+                            .append(neighbour[0] * size + neighbour[1])
+                            .append(" 100 0 50\n");
+                }
+            }
+        }
+        Path path = directory.resolve(name);
+        Files.writeString(path, builder);
+        return path;
+    }
+}
@@ -0,0 +1,41 @@
+package de.unistuttgart.fmi.graph;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class KDTreeTest {
+
+    /**
+     * Radius queries of up to 3000 km at high latitudes and across 180 degrees, where a flat
+     * projection understates distances by far more than a few percent.
+     */
+    @Test
+    void withinRadiusMatchesBruteForceAtLargeRadii() {
+        var random = new Random(42);
+        int n = 20_000;
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = 40 + 49 * random.nextDouble();
+            longitudes[i] = 360 * random.nextDouble() - 180;
+        }
+        var tree = new KDTree(latitudes, longitudes);
+
+        for (int query = 0; query < 100; query++) {
+            double lat = 45 + 44 * random.nextDouble();
+            double lon = query % 4 == 0 ? 179.5 : 360 * random.nextDouble() - 180;
+            double radius = 100 + 2900 * random.nextDouble();
+
+            int[] expected = IntStream.range(0, n)
+                    .filter(i -> KDTree.distance(lat, lon, latitudes[i], longitudes[i]) <= radius)
+                    .toArray();
+            int[] actual = tree.withinRadius(lat, lon, radius);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual, "lat " + lat + ", lon " + lon + ", radius " + radius);
+        }
+    }
+}